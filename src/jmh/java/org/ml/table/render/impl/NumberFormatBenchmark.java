@@ -0,0 +1,102 @@
+package org.ml.table.render.impl;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.ml.table.Cell;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the formatting of double values with String.format() against
+ * {@link CompiledNumberFormat}, both standalone and through
+ * {@link SimpleVelocityRenderer}. Run with <code>gradlew jmh</code>
+ *
+ * @author mlaux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberFormatBenchmark {
+
+    private static final int SIZE = 1024;
+    private final double[] values = new double[SIZE];
+    private final Cell[] cells = new Cell[SIZE];
+    private final CompiledNumberFormat numberFormat = new CompiledNumberFormat(SimpleVelocityRenderer.DEFAULT_DOUBLE_FORMAT);
+    private final SimpleVelocityRenderer renderer = new SimpleVelocityRenderer();
+    private final StringBuilder sb = new StringBuilder(64);
+    private int index = 0;
+
+    /**
+     *
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = random.nextGaussian() * 10000.0;
+            cells[i] = new Cell().setContent(values[i]);
+        }
+    }
+
+    /**
+     * The current implementation
+     *
+     * @return
+     */
+    @Benchmark
+    public String stringFormat() {
+        return String.format(SimpleVelocityRenderer.DEFAULT_DOUBLE_FORMAT, values[next()]);
+    }
+
+    /**
+     * @return
+     */
+    @Benchmark
+    public String compiledToString() {
+        return numberFormat.format(values[next()]);
+    }
+
+    /**
+     * @param blackhole
+     * @throws IOException
+     */
+    @Benchmark
+    public void compiledToBuffer(Blackhole blackhole) throws IOException {
+        sb.setLength(0);
+        numberFormat.format(values[next()], sb);
+        blackhole.consume(sb);
+    }
+
+    /**
+     * @param blackhole
+     * @throws IOException
+     */
+    @Benchmark
+    public void rendererToBuffer(Blackhole blackhole) throws IOException {
+        sb.setLength(0);
+        renderer.renderCell(cells[next()], sb);
+        blackhole.consume(sb);
+    }
+
+    /**
+     *
+     * @return
+     */
+    private int next() {
+        index = (index + 1) & (SIZE - 1);
+        return index;
+    }
+}
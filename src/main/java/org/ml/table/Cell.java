@@ -1,7 +1,11 @@
 package org.ml.table;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +26,25 @@ public class Cell {
     private final Set<String> hints = new HashSet<>();
     private int rowSpan = 1;
     private int colSpan = 1;
+    private List<Binding> bindings = null;
+
+    /**
+     * A table holding the cell, and the location of the cell in it. Tables
+     * are only referenced weakly, so that tables whose cells have been added
+     * to other tables can be discarded. Only tables observing changes bind
+     * their cells.
+     */
+    private static class Binding extends WeakReference<Table> {
+
+        private final int row;
+        private final int col;
+
+        private Binding(Table table, int row, int col) {
+            super(table);
+            this.row = row;
+            this.col = col;
+        }
+    }
 
     /**
      * Constructor for a simple cell with 1 row and 1 column
@@ -81,6 +104,7 @@ public class Cell {
             throw new NullPointerException("hint may not be null");
         }
         hints.add(hint);
+        changed(false);
         return this;
     }
 
@@ -94,6 +118,7 @@ public class Cell {
             throw new NullPointerException("hint may not be null");
         }
         hints.add(hint.toString());
+        changed(false);
         return this;
     }
 
@@ -107,6 +132,7 @@ public class Cell {
             throw new NullPointerException("style may not be null");
         }
         this.style = style;
+        changed(false);
         return this;
     }
 
@@ -205,6 +231,7 @@ public class Cell {
             throw new IllegalArgumentException("value may not be null");
         }
         content.put(key, value);
+        changed(true);
         return this;
     }
 
@@ -221,9 +248,20 @@ public class Cell {
             throw new NullPointerException("value may not be null");
         }
         this.contentSingle = value;
+        changed(true);
         return this;
     }
 
+    /**
+     * Set the anonymous content without notifying the table, for content
+     * which is derived and not changed by the user
+     *
+     * @param value
+     */
+    void storeContent(Object value) {
+        this.contentSingle = value;
+    }
+
     /**
      * Convenience method if enums are used as keys
      *
@@ -280,4 +318,89 @@ public class Cell {
         this.colSpan = colSpan;
     }
 
+    /**
+     * Copy the contents, the style and the hints of another cell, without
+     * notifying tables
+     *
+     * @param cell
+     */
+    void copyFrom(Cell cell) {
+        content.putAll(cell.content);
+        contentSingle = cell.contentSingle;
+        style = cell.style;
+        hints.addAll(cell.hints);
+    }
+
+    /**
+     * Remember a table and the location the cell has been added to. Changes
+     * of the cell are reported to all tables holding it.
+     *
+     * @param owner
+     * @param row The logical row index of the top left slot
+     * @param col The logical column index of the top left slot
+     */
+    void bind(Table owner, int row, int col) {
+        if (owner == null) {
+            throw new NullPointerException("owner may not be null");
+        }
+        removeBinding(owner);
+        if (bindings == null) {
+            bindings = new ArrayList<>(1);
+        }
+        bindings.add(new Binding(owner, row, col));
+    }
+
+    /**
+     * Forget a table the cell has been removed from
+     *
+     * @param owner
+     */
+    void unbind(Table owner) {
+        if (owner == null) {
+            throw new NullPointerException("owner may not be null");
+        }
+        removeBinding(owner);
+    }
+
+    /**
+     * Remove the binding to a table, and bindings to discarded tables
+     *
+     * @param owner
+     */
+    private void removeBinding(Table owner) {
+        if (bindings == null) {
+            return;
+        }
+        for (Iterator<Binding> iterator = bindings.iterator(); iterator.hasNext();) {
+            Table table = iterator.next().get();
+            if (table == null || table == owner) {
+                iterator.remove();
+            }
+        }
+        if (bindings.isEmpty()) {
+            bindings = null;
+        }
+    }
+
+    /**
+     * Report a change to all tables holding the cell
+     *
+     * @param content <code>true</code> if the content has changed, else the
+     * style or the hints
+     */
+    private void changed(boolean content) {
+        if (bindings == null) {
+            return;
+        }
+
+        //.... Listeners may add or remove the cell while the change is reported
+        for (int i = 0; bindings != null && i < bindings.size(); i++) {
+            Binding binding = bindings.get(i);
+            Table table = binding.get();
+            if (table != null) {
+                table.cellChanged(binding.row, binding.col, content);
+            }
+        }
+    }
+
 }
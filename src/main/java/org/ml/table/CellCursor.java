@@ -0,0 +1,147 @@
+package org.ml.table;
+
+/**
+ * A cursor walking the slots of a range of table rows, row by row and within
+ * a row from left to right:
+ * <pre>
+ * CellCursor cursor = table.cursor();
+ * while (cursor.nextRow()) {
+ *     while (cursor.nextVisible()) {
+ *         ... cursor.getCol(), cursor.getCell(), cursor.isDefaultCell() ...
+ *     }
+ * }
+ * </pre> The cursor works on the internal storage of the table, so stepping
+ * does not validate indices or allocate. Table views fill a row buffer owned
+ * by the cursor for each row. The row range is validated and the
+ * table dimensions are read when the cursor is created or reset; the table may
+ * not be modified while the cursor is used. A cursor can be reused for other
+ * ranges with {@link #reset(int, int)}.
+ *
+ * @author mlaux
+ */
+public class CellCursor {
+
+    private final Table table;
+    private int row0;
+    private int col0;
+    private int colNumber;
+    private int to;
+    private int r;
+    private int c;
+    private final RowData data = new RowData();
+
+    /**
+     * @param table
+     * @param from The first row
+     * @param to The row after the last row
+     */
+    CellCursor(Table table, int from, int to) {
+        this.table = table;
+        reset(from, to);
+    }
+
+    /**
+     * Position the cursor before the first row of a new range
+     *
+     * @param from The first row
+     * @param to The row after the last row
+     * @return
+     */
+    public CellCursor reset(int from, int to) {
+        if (from < table.getRow0() || to > table.getRowEnd() + 1) {
+            throw new IllegalArgumentException("Rows must be between " + table.getRow0() + " and " + (table.getRowEnd() + 1));
+        }
+        if (from > to) {
+            throw new IllegalArgumentException("from may not be larger than to");
+        }
+        row0 = table.getRow0();
+        col0 = table.getCol0();
+        colNumber = table.getColNumber();
+        this.to = to - row0;
+        r = from - row0 - 1;
+        c = colNumber;
+        return this;
+    }
+
+    /**
+     * Move to the next row. The cursor is then positioned before the first
+     * column.
+     *
+     * @return <code>false</code> if there are no more rows
+     */
+    public boolean nextRow() {
+        if (r + 1 >= to) {
+            r = to;
+            c = colNumber;
+            return false;
+        }
+        r++;
+        c = -1;
+        table.loadRow(r, data);
+        return true;
+    }
+
+    /**
+     * Move to the next slot of the current row
+     *
+     * @return <code>false</code> if there are no more slots in the row
+     */
+    public boolean next() {
+        if (c + 1 >= colNumber) {
+            c = colNumber;
+            return false;
+        }
+        c++;
+        return true;
+    }
+
+    /**
+     * Move to the next visible slot of the current row
+     *
+     * @return <code>false</code> if there are no more visible slots in the row
+     */
+    public boolean nextVisible() {
+        while (++c < colNumber) {
+            if (data.visible[c]) {
+                return true;
+            }
+        }
+        c = colNumber;
+        return false;
+    }
+
+    /**
+     * @return The logical index of the current row
+     */
+    public int getRow() {
+        return r + row0;
+    }
+
+    /**
+     * @return The logical index of the current column
+     */
+    public int getCol() {
+        return c + col0;
+    }
+
+    /**
+     * @return The cell at the current slot
+     */
+    public Cell getCell() {
+        return data.cells[c];
+    }
+
+    /**
+     * @return <code>true</code> if the current slot is visible
+     */
+    public boolean isVisible() {
+        return data.visible[c];
+    }
+
+    /**
+     * @return <code>true</code> if the current slot contains the default cell
+     */
+    public boolean isDefaultCell() {
+        return data.def[c];
+    }
+}
@@ -0,0 +1,19 @@
+package org.ml.table;
+
+/**
+ * Computes the content of a {@link LazyCell} when it is accessed for the first
+ * time.
+ *
+ * @author mlaux
+ */
+@FunctionalInterface
+public interface CellFunction {
+
+    /**
+     * @param row The logical row index of the cell
+     * @param col The logical column index of the cell
+     * @param table The table the cell has been added to
+     * @return The anonymous content of the cell, may be <code>null</code>
+     */
+    Object compute(int row, int col, Table table);
+}
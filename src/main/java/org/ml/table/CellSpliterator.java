@@ -0,0 +1,154 @@
+package org.ml.table;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the slots of a band of table rows. Splitting halves the
+ * band at a row boundary. The number of elements per row is counted when the
+ * spliterator is created, so that the sizes of all splits are exact also if
+ * only visible slots are delivered.
+ *
+ * @author mlaux
+ */
+class CellSpliterator implements Spliterator<PositionedCell> {
+
+    private final Table table;
+    private final boolean visibleOnly;
+    private final int row0;
+    private final int col0;
+    private final int colNumber;
+    private final int[] counts;
+    private int r;
+    private int c;
+    private final int end;
+    private RowData data = new RowData();
+
+    /**
+     * @param table
+     * @param visibleOnly
+     */
+    CellSpliterator(Table table, boolean visibleOnly) {
+        this.table = table;
+        this.visibleOnly = visibleOnly;
+        row0 = table.getRow0();
+        col0 = table.getCol0();
+        colNumber = table.getColNumber();
+        int rowNumber = table.getRowNumber();
+
+        //.... counts[i] is the number of elements in the rows before internal row i
+        counts = new int[rowNumber + 1];
+        for (int i = 0; i < rowNumber; i++) {
+            int count = colNumber;
+            if (visibleOnly) {
+                count = 0;
+                for (boolean v : table.loadRow(i, data).visible) {
+                    if (v) {
+                        count++;
+                    }
+                }
+            }
+            counts[i + 1] = counts[i] + count;
+        }
+        r = 0;
+        c = 0;
+        end = rowNumber;
+    }
+
+    /**
+     * @param parent
+     * @param from The first internal row
+     * @param to The internal row after the last row
+     */
+    private CellSpliterator(CellSpliterator parent, int from, int to) {
+        table = parent.table;
+        visibleOnly = parent.visibleOnly;
+        row0 = parent.row0;
+        col0 = parent.col0;
+        colNumber = parent.colNumber;
+        counts = parent.counts;
+        r = from;
+        c = 0;
+        end = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super PositionedCell> action) {
+        if (action == null) {
+            throw new NullPointerException("action may not be null");
+        }
+        while (r < end) {
+            if (c == 0) {
+                table.loadRow(r, data);
+            }
+            while (c < colNumber) {
+                int col = c++;
+                if (!visibleOnly || data.visible[col]) {
+                    action.accept(new PositionedCell(r + row0, col + col0, data.cells[col], data.visible[col], data.def[col]));
+                    return true;
+                }
+            }
+            r++;
+            c = 0;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super PositionedCell> action) {
+        if (action == null) {
+            throw new NullPointerException("action may not be null");
+        }
+        for (; r < end; r++) {
+            if (c == 0) {
+                table.loadRow(r, data);
+            }
+            for (; c < colNumber; c++) {
+                if (!visibleOnly || data.visible[c]) {
+                    action.accept(new PositionedCell(r + row0, c + col0, data.cells[c], data.visible[c], data.def[c]));
+                }
+            }
+            c = 0;
+        }
+    }
+
+    @Override
+    public Spliterator<PositionedCell> trySplit() {
+        //.... Only whole rows are handed out, so a partially consumed row stays here
+        int from = c == 0 ? r : r + 1;
+        int mid = (from + end) >>> 1;
+        if (mid <= from) {
+            return null;
+        }
+        //.... The prefix continues the current row, so it takes over the row data
+        CellSpliterator prefix = new CellSpliterator(this, r, mid);
+        prefix.c = c;
+        prefix.data = data;
+        data = new RowData();
+        r = mid;
+        c = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (r >= end) {
+            return 0;
+        }
+        long size = counts[end] - counts[r];
+        if (c > 0) {
+            //.... Remove what has been consumed of the current row
+            for (int i = 0; i < c; i++) {
+                if (!visibleOnly || data.visible[i]) {
+                    size--;
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+}
@@ -0,0 +1,23 @@
+package org.ml.table;
+
+/**
+ * Receives the slots of a table during {@link Table#forEachCell(CellVisitor)}
+ * and {@link Table#forEachVisibleCell(CellVisitor)}. Slots are visited row by
+ * row, and within a row from left to right.
+ *
+ * @author mlaux
+ */
+@FunctionalInterface
+public interface CellVisitor {
+
+    /**
+     * @param row The logical row index
+     * @param col The logical column index
+     * @param cell The cell at the location. Invisible slots refer to the cell
+     * spanning them, empty slots to {@link Table#DEFAULT_CELL}
+     * @param visible <code>false</code> if the slot is covered by a cell
+     * spanning more than one row and/or column
+     * @param defaultCell <code>true</code> if the slot is empty
+     */
+    void visit(int row, int col, Cell cell, boolean visible, boolean defaultCell);
+}
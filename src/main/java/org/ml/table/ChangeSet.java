@@ -0,0 +1,97 @@
+package org.ml.table;
+
+import java.util.BitSet;
+
+/**
+ * The rows and columns of a table which have changed between two calls of
+ * {@link Table#getChanges()}. A row or column is changed if a slot in it has
+ * been set, if the content, style or hints of a cell covering it have been
+ * modified, or if it has been added to the table. If the dimensions of the
+ * table have changed otherwise, for example by compaction, the table is
+ * resized and consumers should treat all of it as changed.
+ *
+ * @author mlaux
+ */
+public final class ChangeSet {
+
+    private final long version;
+    private final boolean resized;
+    private final BitSet rows;
+    private final int rowOrigin;
+    private final BitSet cols;
+    private final int colOrigin;
+
+    /**
+     * @param version
+     * @param resized
+     * @param rows The changed rows, relative to the origin
+     * @param rowOrigin The logical row index of the first bit
+     * @param cols The changed columns, relative to the origin
+     * @param colOrigin The logical column index of the first bit
+     */
+    ChangeSet(long version, boolean resized, BitSet rows, int rowOrigin, BitSet cols, int colOrigin) {
+        this.version = version;
+        this.resized = resized;
+        this.rows = rows;
+        this.rowOrigin = rowOrigin;
+        this.cols = cols;
+        this.colOrigin = colOrigin;
+    }
+
+    /**
+     * @return The version of the table when the changes were retrieved
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return <code>true</code> if rows or columns have been removed, or if
+     * logical indices of cells have changed
+     */
+    public boolean isResized() {
+        return resized;
+    }
+
+    /**
+     * @return <code>true</code> if nothing has changed
+     */
+    public boolean isEmpty() {
+        return !resized && rows.isEmpty() && cols.isEmpty();
+    }
+
+    /**
+     * @param row The logical row index
+     * @return
+     */
+    public boolean isRowChanged(int row) {
+        return row >= rowOrigin && rows.get(row - rowOrigin);
+    }
+
+    /**
+     * @param col The logical column index
+     * @return
+     */
+    public boolean isColumnChanged(int col) {
+        return col >= colOrigin && cols.get(col - colOrigin);
+    }
+
+    /**
+     * @return The logical indices of the changed rows in ascending order
+     */
+    public int[] getRows() {
+        return rows.stream().map(i -> i + rowOrigin).toArray();
+    }
+
+    /**
+     * @return The logical indices of the changed columns in ascending order
+     */
+    public int[] getColumns() {
+        return cols.stream().map(i -> i + colOrigin).toArray();
+    }
+
+    @Override
+    public String toString() {
+        return "version " + version + (resized ? " (resized)" : "") + ", rows " + rows.cardinality() + ", columns " + cols.cardinality();
+    }
+}
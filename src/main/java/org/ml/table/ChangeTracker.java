@@ -0,0 +1,133 @@
+package org.ml.table;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the rows and columns of a table changed since the changes have
+ * been retrieved last. The bitmaps are indexed by logical indices relative to
+ * an origin, which moves when rows or columns are marked before it. In
+ * addition, the version of the last change of each row is kept, which is not
+ * cleared when the changes are retrieved.
+ * <p>
+ * Versions are taken from a counter shared by all trackers, so that a
+ * tracker created when change tracking is enabled again never repeats a
+ * version handed out before. Creating a tracker counts as a change of all
+ * rows, since changes made without tracking are unknown.
+ *
+ * @author mlaux
+ */
+final class ChangeTracker {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private long version;
+    private boolean resized = false;
+    private BitSet rows = new BitSet();
+    private int rowOrigin;
+    private BitSet cols = new BitSet();
+    private int colOrigin;
+    private long[] rowVersions = new long[0];
+    private int versionOrigin;
+    private long resizeVersion = 0;
+
+    /**
+     * @param row0 The logical index of the first row of the table
+     * @param col0 The logical index of the first column of the table
+     */
+    ChangeTracker(int row0, int col0) {
+        rowOrigin = row0;
+        colOrigin = col0;
+        versionOrigin = row0;
+        version = VERSIONS.incrementAndGet();
+        resizeVersion = version;
+    }
+
+    /**
+     * @return The version of the last change recorded
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Mark a rectangle of slots as changed
+     *
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowEnd The logical index of the last row
+     * @param colEnd The logical index of the last column
+     */
+    void mark(int rowFrom, int colFrom, int rowEnd, int colEnd) {
+        if (rowFrom < rowOrigin) {
+            rows = shift(rows, rowOrigin - rowFrom);
+            rowOrigin = rowFrom;
+        }
+        if (colFrom < colOrigin) {
+            cols = shift(cols, colOrigin - colFrom);
+            colOrigin = colFrom;
+        }
+        rows.set(rowFrom - rowOrigin, rowEnd - rowOrigin + 1);
+        cols.set(colFrom - colOrigin, colEnd - colOrigin + 1);
+        version = VERSIONS.incrementAndGet();
+
+        //.... Keep the versions of the rows
+        if (rowFrom < versionOrigin || rowEnd - versionOrigin >= rowVersions.length) {
+            int origin = Math.min(rowFrom, versionOrigin);
+            int length = Math.max(rowEnd, versionOrigin + rowVersions.length - 1) - origin + 1;
+            long[] versions = new long[Math.max(length, 2 * rowVersions.length)];
+            System.arraycopy(rowVersions, 0, versions, versionOrigin - origin, rowVersions.length);
+            rowVersions = versions;
+            versionOrigin = origin;
+        }
+        Arrays.fill(rowVersions, rowFrom - versionOrigin, rowEnd - versionOrigin + 1, version);
+    }
+
+    /**
+     * @param rowFrom The logical index of the first row
+     * @param rowTo The logical index of the row after the last row
+     * @return The version of the last change in the rows
+     */
+    long getVersion(int rowFrom, int rowTo) {
+        long rowsVersion = resizeVersion;
+        int from = Math.max(rowFrom - versionOrigin, 0);
+        int to = Math.min(rowTo - versionOrigin, rowVersions.length);
+        for (int i = from; i < to; i++) {
+            rowsVersion = Math.max(rowsVersion, rowVersions[i]);
+        }
+        return rowsVersion;
+    }
+
+    /**
+     * Mark that rows or columns have been removed or moved
+     */
+    void markResized() {
+        resized = true;
+        version = VERSIONS.incrementAndGet();
+
+        //.... All rows may have moved
+        resizeVersion = version;
+        rowVersions = new long[0];
+    }
+
+    /**
+     * @param row0 The logical index of the first row of the table
+     * @param col0 The logical index of the first column of the table
+     * @return The changes recorded so far, after which the record is cleared
+     */
+    ChangeSet drain(int row0, int col0) {
+        ChangeSet changeSet = new ChangeSet(version, resized, rows, rowOrigin, cols, colOrigin);
+        resized = false;
+        rows = new BitSet();
+        rowOrigin = row0;
+        cols = new BitSet();
+        colOrigin = col0;
+        return changeSet;
+    }
+
+    private static BitSet shift(BitSet bits, int count) {
+        BitSet shifted = new BitSet();
+        bits.stream().forEach(i -> shifted.set(i + count));
+        return shifted;
+    }
+}
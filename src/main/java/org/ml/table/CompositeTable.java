@@ -0,0 +1,198 @@
+package org.ml.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A table composed of other tables placed at fixed locations. In contrast to
+ * {@link Table#addTable(Table, int, int)} no cells are copied: the slots are
+ * resolved through the placed tables when the composite is traversed, so
+ * changes of their cells are visible immediately. Slots not covered by any
+ * table are empty. The dimensions of placed tables must not change.
+ * <p>
+ * The composite has renderers and tags of its own, while its cells are
+ * read-only.
+ *
+ * @author mlaux
+ */
+public class CompositeTable extends TableView {
+
+    private final List<Placement> placements = new ArrayList<>();
+    //.... The placement index: rows and columns are grouped into bands between the edges of the placed tables
+    private int[] rowEdges;
+    private int[] colEdges;
+    private final int[] rowBands;
+    private final int[] colBands;
+    private Placement[][] grid;
+
+    /**
+     * A table placed in the composite
+     */
+    private static class Placement {
+
+        private final Table table;
+        private final int row;
+        private final int col;
+        private final int rowNumber;
+        private final int colNumber;
+
+        private Placement(Table table, int row, int col) {
+            this.table = table;
+            this.row = row;
+            this.col = col;
+            rowNumber = table.getRowNumber();
+            colNumber = table.getColNumber();
+        }
+
+        private boolean overlaps(Placement other) {
+            return row < other.row + other.rowNumber && other.row < row + rowNumber
+                    && col < other.col + other.colNumber && other.col < col + colNumber;
+        }
+    }
+
+    /**
+     * Constructor for a composite where the logical indexes for rows and
+     * columns start at 0
+     *
+     * @param rowNumber
+     * @param colNumber
+     */
+    public CompositeTable(int rowNumber, int colNumber) {
+        this(0, 0, rowNumber, colNumber);
+    }
+
+    /**
+     * @param row0 The logical index of the first row
+     * @param col0 The logical index of the first column
+     * @param rowNumber
+     * @param colNumber
+     */
+    public CompositeTable(int row0, int col0, int rowNumber, int colNumber) {
+        super(null, row0, col0, rowNumber, colNumber);
+        rowBands = new int[rowNumber];
+        colBands = new int[colNumber];
+        index();
+    }
+
+    /**
+     * Place a table in the composite. The table must fit into the composite
+     * and may not overlap with tables placed before.
+     *
+     * @param table
+     * @param row The logical index of the row for the first row of the table
+     * @param col The logical index of the column for the first column of the
+     * table
+     * @return
+     */
+    public CompositeTable add(Table table, int row, int col) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (table == this) {
+            throw new IllegalArgumentException("A composite can not contain itself");
+        }
+        Placement placement = new Placement(table, row - getRow0(), col - getCol0());
+        if (placement.row < 0 || placement.col < 0
+                || placement.row + placement.rowNumber > getRowNumber()
+                || placement.col + placement.colNumber > getColNumber()) {
+            throw new IllegalArgumentException("table does not fit into the composite at " + row + "/" + col);
+        }
+        for (Placement other : placements) {
+            if (placement.overlaps(other)) {
+                throw new IllegalArgumentException("table at " + row + "/" + col + " overlaps the table at "
+                        + (other.row + getRow0()) + "/" + (other.col + getCol0()));
+            }
+        }
+        placements.add(placement);
+        index();
+        return this;
+    }
+
+    /**
+     * @return The number of tables placed in the composite
+     */
+    public int getTableCount() {
+        return placements.size();
+    }
+
+    /**
+     * Rebuild the placement index
+     */
+    private void index() {
+        TreeSet<Integer> rows = new TreeSet<>(Arrays.asList(0, getRowNumber()));
+        TreeSet<Integer> cols = new TreeSet<>(Arrays.asList(0, getColNumber()));
+        for (Placement placement : placements) {
+            rows.add(placement.row);
+            rows.add(placement.row + placement.rowNumber);
+            cols.add(placement.col);
+            cols.add(placement.col + placement.colNumber);
+        }
+        rowEdges = rows.stream().mapToInt(Integer::intValue).toArray();
+        colEdges = cols.stream().mapToInt(Integer::intValue).toArray();
+        bands(rowEdges, rowBands);
+        bands(colEdges, colBands);
+
+        grid = new Placement[rowEdges.length - 1][colEdges.length - 1];
+        for (Placement placement : placements) {
+            for (int rb = rowBands[placement.row]; rb < grid.length && rowEdges[rb] < placement.row + placement.rowNumber; rb++) {
+                for (int cb = colBands[placement.col]; cb < grid[rb].length && colEdges[cb] < placement.col + placement.colNumber; cb++) {
+                    grid[rb][cb] = placement;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param edges The sorted indices where bands start, followed by the end
+     * @param bands Receives the band of each index
+     */
+    private static void bands(int[] edges, int[] bands) {
+        for (int band = 0; band < edges.length - 1; band++) {
+            Arrays.fill(bands, edges[band], edges[band + 1], band);
+        }
+    }
+
+    @Override
+    Cell cellAt(int r, int c) {
+        Placement placement = grid[rowBands[r]][colBands[c]];
+        return placement == null ? DEFAULT_CELL : placement.table.cellAt(r - placement.row, c - placement.col);
+    }
+
+    @Override
+    boolean visibleAt(int r, int c) {
+        Placement placement = grid[rowBands[r]][colBands[c]];
+        return placement == null || placement.table.visibleAt(r - placement.row, c - placement.col);
+    }
+
+    @Override
+    boolean defaultAt(int r, int c) {
+        Placement placement = grid[rowBands[r]][colBands[c]];
+        return placement == null || placement.table.defaultAt(r - placement.row, c - placement.col);
+    }
+
+    @Override
+    RowData loadRow(int r, RowData data) {
+        data.buffers(getColNumber());
+        Placement[] row = grid[rowBands[r]];
+
+        //.... Copy the row band by band, each band comes from one placed table or is empty
+        for (int cb = 0; cb < row.length; cb++) {
+            int from = colEdges[cb];
+            int to = colEdges[cb + 1];
+            Placement placement = row[cb];
+            if (placement == null) {
+                Arrays.fill(data.cells, from, to, DEFAULT_CELL);
+                Arrays.fill(data.visible, from, to, true);
+                Arrays.fill(data.def, from, to, true);
+            } else {
+                RowData part = placement.table.loadRow(r - placement.row, data.part());
+                System.arraycopy(part.cells, from - placement.col, data.cells, from, to - from);
+                System.arraycopy(part.visible, from - placement.col, data.visible, from, to - from);
+                System.arraycopy(part.def, from - placement.col, data.def, from, to - from);
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,494 @@
+package org.ml.table;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An expression computing the content of a {@link FormulaCell} from other
+ * cells of the table. Formulas refer to cells by their logical indices and
+ * can aggregate rectangular ranges or the cells of a column in all rows
+ * carrying a tag. Only the anonymous content of the top left slot of a cell
+ * is used, and contents which are not numbers count as empty.
+ * <p>
+ * Formulas are immutable and can be shared between cells.
+ *
+ * @author mlaux
+ */
+public abstract class Formula {
+
+    /**
+     * The aggregations supported for ranges and tagged rows. Empty cells are
+     * ignored, as in spreadsheets.
+     */
+    public enum Aggregate {
+
+        /**
+         * The sum, 0 if there are no numbers
+         */
+        SUM,
+        /**
+         * The number of cells containing numbers
+         */
+        COUNT,
+        /**
+         * The average, NaN if there are no numbers
+         */
+        AVERAGE,
+        /**
+         * The minimum, 0 if there are no numbers
+         */
+        MIN,
+        /**
+         * The maximum, 0 if there are no numbers
+         */
+        MAX
+    }
+
+    /**
+     * @param row The logical row index
+     * @param col The logical column index
+     * @return A formula with the content of the cell at the given location,
+     * 0 if it is empty
+     */
+    public static Formula cell(int row, int col) {
+        return new Reference(row, col);
+    }
+
+    /**
+     * @param value
+     * @return
+     */
+    public static Formula constant(double value) {
+        return new Constant(value);
+    }
+
+    /**
+     * @param aggregate
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowEnd The logical index of the last row
+     * @param colEnd The logical index of the last column
+     * @return A formula aggregating the given range
+     */
+    public static Formula aggregate(Aggregate aggregate, int rowFrom, int colFrom, int rowEnd, int colEnd) {
+        if (aggregate == null) {
+            throw new NullPointerException("aggregate may not be null");
+        }
+        if (rowFrom > rowEnd || colFrom > colEnd) {
+            throw new IllegalArgumentException("The range may not be empty");
+        }
+        return new Range(aggregate, rowFrom, colFrom, rowEnd, colEnd);
+    }
+
+    /**
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowEnd The logical index of the last row
+     * @param colEnd The logical index of the last column
+     * @return A formula summing the given range
+     */
+    public static Formula sum(int rowFrom, int colFrom, int rowEnd, int colEnd) {
+        return aggregate(Aggregate.SUM, rowFrom, colFrom, rowEnd, colEnd);
+    }
+
+    /**
+     * @param aggregate
+     * @param tagName The name of the row tag
+     * @param col The logical column index
+     * @return A formula aggregating the cells of the column in all rows with
+     * the given tag
+     */
+    public static Formula aggregateTagged(Aggregate aggregate, String tagName, int col) {
+        if (aggregate == null) {
+            throw new NullPointerException("aggregate may not be null");
+        }
+        if (tagName == null) {
+            throw new NullPointerException("tagName may not be null");
+        }
+        return new Tagged(aggregate, tagName, col);
+    }
+
+    /**
+     * @param tagName The name of the row tag
+     * @param col The logical column index
+     * @return A formula summing the cells of the column in all rows with the
+     * given tag
+     */
+    public static Formula sumTagged(String tagName, int col) {
+        return aggregateTagged(Aggregate.SUM, tagName, col);
+    }
+
+    /**
+     * @param other
+     * @return
+     */
+    public Formula plus(Formula other) {
+        return new Binary(this, '+', other);
+    }
+
+    /**
+     * @param other
+     * @return
+     */
+    public Formula minus(Formula other) {
+        return new Binary(this, '-', other);
+    }
+
+    /**
+     * @param other
+     * @return
+     */
+    public Formula times(Formula other) {
+        return new Binary(this, '*', other);
+    }
+
+    /**
+     * @param other
+     * @return A formula dividing by the other formula, NaN if it is 0
+     */
+    public Formula dividedBy(Formula other) {
+        return new Binary(this, '/', other);
+    }
+
+    /**
+     * @param table
+     * @return The value of the formula for the current contents of the table
+     */
+    abstract double evaluate(Table table);
+
+    /**
+     * Collect the ranges of slots the formula reads
+     *
+     * @param table
+     * @param regions Receives the ranges as logical {rowFrom, colFrom, rowEnd,
+     * colEnd}
+     */
+    abstract void addRegions(Table table, List<int[]> regions);
+
+    /**
+     * Collect the names of the row tags the formula depends on
+     *
+     * @param tagNames
+     */
+    void addTagNames(Set<String> tagNames) {
+    }
+
+    /**
+     * @param table
+     * @param rowOffset The offset from logical row indices to rows of the
+     * sheet
+     * @return The formula in Excel syntax, or <code>null</code> if it can not
+     * be expressed there
+     */
+    public abstract String toExcel(Table table, int rowOffset);
+
+    /**
+     * @param table
+     * @param row The logical row index
+     * @param col The logical column index
+     * @return The number in the slot, or <code>null</code> if it is empty,
+     * covered, outside of the table or does not contain a number
+     */
+    static Number valueAt(Table table, int row, int col) {
+        int r = row - table.getRow0();
+        int c = col - table.getCol0();
+        if (r < 0 || c < 0 || r >= table.getRowNumber() || c >= table.getColNumber()
+                || !table.visibleAt(r, c) || table.defaultAt(r, c)) {
+            return null;
+        }
+        Object content = table.cellAt(r, c).getContent();
+        return content instanceof Number ? (Number) content : null;
+    }
+
+    /**
+     * @param row The row of the sheet
+     * @param col The column of the sheet
+     * @return The reference in A1 notation
+     */
+    static String excelReference(int row, int col) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = col + 1; n > 0; n = (n - 1) / 26) {
+            sb.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return sb.append(row + 1).toString();
+    }
+
+    /**
+     * Accumulates numbers for an aggregate
+     */
+    private static class Accumulator {
+
+        private final Aggregate aggregate;
+        private double value = 0.0;
+        private int count = 0;
+
+        private Accumulator(Aggregate aggregate) {
+            this.aggregate = aggregate;
+        }
+
+        private void add(Number number) {
+            if (number == null) {
+                return;
+            }
+            double v = number.doubleValue();
+            switch (aggregate) {
+                case MIN:
+                    value = count == 0 ? v : Math.min(value, v);
+                    break;
+                case MAX:
+                    value = count == 0 ? v : Math.max(value, v);
+                    break;
+                default:
+                    value += v;
+            }
+            count++;
+        }
+
+        private double result() {
+            switch (aggregate) {
+                case COUNT:
+                    return count;
+                case AVERAGE:
+                    return count == 0 ? Double.NaN : value / count;
+                default:
+                    return value;
+            }
+        }
+    }
+
+    /**
+     * A reference to a single cell
+     */
+    private static class Reference extends Formula {
+
+        private final int row;
+        private final int col;
+
+        private Reference(int row, int col) {
+            this.row = row;
+            this.col = col;
+        }
+
+        @Override
+        double evaluate(Table table) {
+            Number value = valueAt(table, row, col);
+            return value == null ? 0.0 : value.doubleValue();
+        }
+
+        @Override
+        void addRegions(Table table, List<int[]> regions) {
+            regions.add(new int[]{row, col, row, col});
+        }
+
+        @Override
+        public String toExcel(Table table, int rowOffset) {
+            return excelReference(row + rowOffset, col);
+        }
+    }
+
+    /**
+     * A constant value
+     */
+    private static class Constant extends Formula {
+
+        private final double value;
+
+        private Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double evaluate(Table table) {
+            return value;
+        }
+
+        @Override
+        void addRegions(Table table, List<int[]> regions) {
+        }
+
+        @Override
+        public String toExcel(Table table, int rowOffset) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return null;
+            }
+            return BigDecimal.valueOf(value).toPlainString();
+        }
+    }
+
+    /**
+     * An aggregate over a rectangular range
+     */
+    private static class Range extends Formula {
+
+        private final Aggregate aggregate;
+        private final int rowFrom;
+        private final int colFrom;
+        private final int rowEnd;
+        private final int colEnd;
+
+        private Range(Aggregate aggregate, int rowFrom, int colFrom, int rowEnd, int colEnd) {
+            this.aggregate = aggregate;
+            this.rowFrom = rowFrom;
+            this.colFrom = colFrom;
+            this.rowEnd = rowEnd;
+            this.colEnd = colEnd;
+        }
+
+        @Override
+        double evaluate(Table table) {
+            Accumulator accumulator = new Accumulator(aggregate);
+
+            //.... Parts of the range outside of the table are empty
+            int rFrom = Math.max(rowFrom, table.getRow0());
+            int rEnd = Math.min(rowEnd, table.getRowEnd());
+            int cFrom = Math.max(colFrom, table.getCol0());
+            int cEnd = Math.min(colEnd, table.getColEnd());
+            for (int row = rFrom; row <= rEnd; row++) {
+                for (int col = cFrom; col <= cEnd; col++) {
+                    accumulator.add(valueAt(table, row, col));
+                }
+            }
+            return accumulator.result();
+        }
+
+        @Override
+        void addRegions(Table table, List<int[]> regions) {
+            regions.add(new int[]{rowFrom, colFrom, rowEnd, colEnd});
+        }
+
+        @Override
+        public String toExcel(Table table, int rowOffset) {
+            return aggregate.name() + "(" + excelReference(rowFrom + rowOffset, colFrom) + ":"
+                    + excelReference(rowEnd + rowOffset, colEnd) + ")";
+        }
+    }
+
+    /**
+     * An aggregate over a column in all rows carrying a tag
+     */
+    private static class Tagged extends Formula {
+
+        private static final int EXCEL_MAX_ARGUMENTS = 255;
+        private final Aggregate aggregate;
+        private final String tagName;
+        private final int col;
+
+        private Tagged(Aggregate aggregate, String tagName, int col) {
+            this.aggregate = aggregate;
+            this.tagName = tagName;
+            this.col = col;
+        }
+
+        /**
+         * @param table
+         * @return The logical indices of the tagged rows
+         */
+        private List<Integer> rows(Table table) {
+            List<Integer> rows = new ArrayList<>();
+            for (int row = table.getRow0(); row <= table.getRowEnd(); row++) {
+                Map<String, String> rowTags = table.getTags(Table.Direction.ROW, row);
+                if (rowTags != null && rowTags.containsKey(tagName)) {
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        double evaluate(Table table) {
+            Accumulator accumulator = new Accumulator(aggregate);
+            for (int row : rows(table)) {
+                accumulator.add(valueAt(table, row, col));
+            }
+            return accumulator.result();
+        }
+
+        @Override
+        void addRegions(Table table, List<int[]> regions) {
+            for (int row : rows(table)) {
+                regions.add(new int[]{row, col, row, col});
+            }
+        }
+
+        @Override
+        void addTagNames(Set<String> tagNames) {
+            tagNames.add(tagName);
+        }
+
+        @Override
+        public String toExcel(Table table, int rowOffset) {
+            List<Integer> rows = rows(table);
+            if (rows.isEmpty() || rows.size() > EXCEL_MAX_ARGUMENTS) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder(aggregate.name()).append('(');
+            for (int i = 0; i < rows.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(excelReference(rows.get(i) + rowOffset, col));
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    /**
+     * An arithmetic operation on two formulas
+     */
+    private static class Binary extends Formula {
+
+        private final Formula left;
+        private final char operator;
+        private final Formula right;
+
+        private Binary(Formula left, char operator, Formula right) {
+            if (right == null) {
+                throw new NullPointerException("other may not be null");
+            }
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(Table table) {
+            double a = left.evaluate(table);
+            double b = right.evaluate(table);
+            switch (operator) {
+                case '+':
+                    return a + b;
+                case '-':
+                    return a - b;
+                case '*':
+                    return a * b;
+                default:
+                    return b == 0.0 ? Double.NaN : a / b;
+            }
+        }
+
+        @Override
+        void addRegions(Table table, List<int[]> regions) {
+            left.addRegions(table, regions);
+            right.addRegions(table, regions);
+        }
+
+        @Override
+        void addTagNames(Set<String> tagNames) {
+            left.addTagNames(tagNames);
+            right.addTagNames(tagNames);
+        }
+
+        @Override
+        public String toExcel(Table table, int rowOffset) {
+            String a = left.toExcel(table, rowOffset);
+            String b = right.toExcel(table, rowOffset);
+            if (a == null || b == null) {
+                return null;
+            }
+            return "(" + a + operator + b + ")";
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.ml.table;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A cell whose anonymous content is computed by a {@link Formula}. The
+ * content is a <code>Double</code>, which is computed when the cell is added
+ * to a table and recomputed whenever a cell the formula depends on changes.
+ * Cell references are resolved in the table holding the cell. As the content
+ * depends on that table, a formula cell can only be added to one table at
+ * one location; {@link Table#addTable(Table, int, int)} adds copies.
+ *
+ * @author mlaux
+ */
+public class FormulaCell extends Cell {
+
+    private final Formula formula;
+    private WeakReference<Table> table = null;
+
+    /**
+     * Constructor for a formula cell with 1 row and 1 column
+     *
+     * @param formula
+     */
+    public FormulaCell(Formula formula) {
+        this(1, 1, formula);
+    }
+
+    /**
+     * @param rowSpan The number of rows that this cell spans
+     * @param colSpan The number of columns that this cell spans
+     * @param formula
+     */
+    public FormulaCell(int rowSpan, int colSpan, Formula formula) {
+        super(rowSpan, colSpan);
+        if (formula == null) {
+            throw new NullPointerException("formula may not be null");
+        }
+        this.formula = formula;
+    }
+
+    /**
+     * @return
+     */
+    public Formula getFormula() {
+        return formula;
+    }
+
+    /**
+     * The anonymous content of formula cells is computed
+     *
+     * @param value
+     * @return
+     */
+    @Override
+    public Cell setContent(Object value) {
+        throw new UnsupportedOperationException("The content of formula cells is computed");
+    }
+
+    /**
+     * @return A new formula cell with the same formula, contents, style and
+     * hints, which has not been added to a table
+     */
+    FormulaCell copy() {
+        FormulaCell copy = new FormulaCell(getRowSpan(), getColSpan(), formula);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * @return The table holding the cell, or <code>null</code>
+     */
+    Table getTable() {
+        return table == null ? null : table.get();
+    }
+
+    /**
+     * @param table The table holding the cell, or <code>null</code> if it
+     * has been removed
+     */
+    void setTable(Table table) {
+        this.table = table == null ? null : new WeakReference<>(table);
+    }
+
+    /**
+     * Evaluate the formula for a table
+     *
+     * @param table The table holding the cell
+     * @return <code>true</code> if the value has changed
+     */
+    boolean evaluate(Table table) {
+        Double value = formula.evaluate(table);
+        if (value.equals(getContent())) {
+            return false;
+        }
+        storeContent(value);
+        return true;
+    }
+}
@@ -0,0 +1,395 @@
+package org.ml.table;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependencies between the formula cells of a table and the slots they
+ * read. The ranges read by each formula are indexed by column and blocks of
+ * rows, so that the formulas depending on a changed slot are found without
+ * looking at all formulas. When a slot changes, only the formulas depending
+ * on it directly or indirectly are recomputed, in dependency order. Within a
+ * batch (see {@link Table#batch(Runnable)}), the formulas to recompute are
+ * collected and recomputed once when the batch is complete.
+ * <p>
+ * The graph keeps the locations of the formula cells itself, and evaluates
+ * the formulas for its table only.
+ *
+ * @author mlaux
+ */
+final class FormulaGraph {
+
+    private static final int BLOCK_SIZE = 64;
+    private final Table table;
+    private final Map<FormulaCell, int[]> positions = new HashMap<>();
+    private final Map<FormulaCell, List<int[]>> regions = new HashMap<>();
+    private final Map<Long, Set<FormulaCell>> index = new HashMap<>();
+    private final Map<String, Set<FormulaCell>> tagged = new HashMap<>();
+    private final Set<FormulaCell> clipped = new HashSet<>();
+    private final Set<FormulaCell> pending = new LinkedHashSet<>();
+
+    /**
+     * @param table
+     */
+    FormulaGraph(Table table) {
+        this.table = table;
+    }
+
+    /**
+     * Make sure a formula cell can be added at the given location without
+     * creating a cycle
+     *
+     * @param cell
+     * @param row The logical row index
+     * @param col The logical column index
+     */
+    void check(FormulaCell cell, int row, int col) {
+        if (cell.getTable() != null) {
+            throw new IllegalArgumentException("Formula cells can only be added to one table at one location");
+        }
+        List<int[]> cellRegions = new ArrayList<>();
+        cell.getFormula().addRegions(table, cellRegions);
+
+        //.... A cycle exists if the cell or any formula depending on it is read by the cell
+        if (contains(cellRegions, row, col)) {
+            throw new IllegalArgumentException("Formula at (" + row + "/" + col + ") refers to itself");
+        }
+        for (FormulaCell dependent : closure(dependents(row, col))) {
+            int[] position = positions.get(dependent);
+            if (contains(cellRegions, position[0], position[1])) {
+                throw new IllegalArgumentException("Formula at (" + row + "/" + col + ") would create a cycle through ("
+                        + position[0] + "/" + position[1] + ")");
+            }
+        }
+    }
+
+    /**
+     * Register a formula cell which has been added to the table, compute it
+     * and the formulas depending on it
+     *
+     * @param cell
+     * @param row The logical row index
+     * @param col The logical column index
+     */
+    void add(FormulaCell cell, int row, int col) {
+        cell.setTable(table);
+        positions.put(cell, new int[]{row, col});
+        register(cell);
+        if (table.inBatch()) {
+            pending.add(cell);
+        } else {
+            cell.evaluate(table);
+            changed(row, col);
+        }
+    }
+
+    /**
+     * Forget a formula cell which has been removed from the table
+     *
+     * @param cell
+     */
+    void remove(FormulaCell cell) {
+        if (positions.remove(cell) != null) {
+            unregister(cell);
+            pending.remove(cell);
+            cell.setTable(null);
+        }
+    }
+
+    /**
+     * Recompute the formulas depending on a slot
+     *
+     * @param row The logical row index
+     * @param col The logical column index
+     */
+    void changed(int row, int col) {
+        List<FormulaCell> dependents = dependents(row, col);
+        if (dependents.isEmpty()) {
+            return;
+        }
+        if (table.inBatch()) {
+            pending.addAll(dependents);
+        } else {
+            recompute(closure(dependents));
+        }
+    }
+
+    /**
+     * Recompute the formulas collected during a batch, and the formulas
+     * depending on them
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<FormulaCell> roots = new ArrayList<>(pending);
+        pending.clear();
+        recompute(closure(roots));
+    }
+
+    /**
+     * Recompute the formulas depending on a row tag, as the rows carrying it
+     * have changed. If the formulas now depend on themselves, directly or
+     * indirectly, nothing is recomputed and the caller has to restore the
+     * previous tags and call this method again.
+     *
+     * @param tagName
+     */
+    void tagsChanged(String tagName) {
+        Set<FormulaCell> cells = tagged.get(tagName);
+        if (cells == null) {
+            return;
+        }
+        List<FormulaCell> roots = new ArrayList<>(cells);
+        for (FormulaCell cell : roots) {
+            unregister(cell);
+            register(cell);
+        }
+        List<FormulaCell> order = order(closure(roots));
+        if (order == null) {
+            throw new IllegalArgumentException("Tag '" + tagName + "' would create a cycle between formulas");
+        }
+        if (table.inBatch()) {
+            pending.addAll(roots);
+        } else {
+            evaluate(order);
+        }
+    }
+
+    /**
+     * Extend the index after rows or columns have been added. The new slots
+     * are empty, so no formula changes its value, and only the formulas whose
+     * ranges reached beyond the previous bounds of the table are indexed
+     * further.
+     *
+     * @param rowFrom The logical index of the first new row
+     * @param colFrom The logical index of the first new column
+     * @param rowEnd The logical index of the last new row
+     * @param colEnd The logical index of the last new column
+     */
+    void grown(int rowFrom, int colFrom, int rowEnd, int colEnd) {
+        for (Iterator<FormulaCell> iterator = clipped.iterator(); iterator.hasNext();) {
+            FormulaCell cell = iterator.next();
+            List<int[]> cellRegions = regions.get(cell);
+            for (int[] region : cellRegions) {
+                int[] added = {Math.max(region[0], rowFrom), Math.max(region[1], colFrom), Math.min(region[2], rowEnd), Math.min(region[3], colEnd)};
+                if (added[0] <= added[2] && added[1] <= added[3]) {
+                    for (long key : keys(Collections.singletonList(added))) {
+                        index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(cell);
+                    }
+                }
+            }
+            if (!exceeds(cellRegions)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Register and recompute all formulas, after cells have moved
+     */
+    void rebuild() {
+        positions.clear();
+        regions.clear();
+        index.clear();
+        tagged.clear();
+        clipped.clear();
+        for (int r = 0; r < table.getRowNumber(); r++) {
+            for (int c = 0; c < table.getColNumber(); c++) {
+                if (table.visibleAt(r, c) && table.cellAt(r, c) instanceof FormulaCell) {
+                    FormulaCell cell = (FormulaCell) table.cellAt(r, c);
+                    positions.put(cell, new int[]{r + table.getRow0(), c + table.getCol0()});
+                    register(cell);
+                }
+            }
+        }
+        pending.retainAll(positions.keySet());
+        if (table.inBatch()) {
+            pending.addAll(positions.keySet());
+        } else {
+            recompute(closure(new ArrayList<>(positions.keySet())));
+        }
+    }
+
+    private void register(FormulaCell cell) {
+        List<int[]> cellRegions = new ArrayList<>();
+        cell.getFormula().addRegions(table, cellRegions);
+        regions.put(cell, cellRegions);
+        for (long key : keys(cellRegions)) {
+            index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(cell);
+        }
+        if (exceeds(cellRegions)) {
+            clipped.add(cell);
+        }
+        Set<String> tagNames = new HashSet<>();
+        cell.getFormula().addTagNames(tagNames);
+        for (String tagName : tagNames) {
+            tagged.computeIfAbsent(tagName, k -> new HashSet<>()).add(cell);
+        }
+    }
+
+    private void unregister(FormulaCell cell) {
+        for (long key : keys(regions.remove(cell))) {
+            Set<FormulaCell> cells = index.get(key);
+            if (cells != null) {
+                cells.remove(cell);
+            }
+        }
+        clipped.remove(cell);
+        for (Set<FormulaCell> cells : tagged.values()) {
+            cells.remove(cell);
+        }
+    }
+
+    /**
+     * @param cellRegions
+     * @return The keys of the index entries covering the regions within the
+     * current bounds of the table
+     */
+    private Set<Long> keys(List<int[]> cellRegions) {
+        Set<Long> keys = new HashSet<>();
+        for (int[] region : cellRegions) {
+            int rowFrom = Math.max(region[0], table.getRow0());
+            int rowEnd = Math.min(region[2], table.getRowEnd());
+            int colFrom = Math.max(region[1], table.getCol0());
+            int colEnd = Math.min(region[3], table.getColEnd());
+            for (int col = colFrom; col <= colEnd; col++) {
+                for (long block = Math.floorDiv(rowFrom, BLOCK_SIZE); block <= Math.floorDiv(rowEnd, BLOCK_SIZE); block++) {
+                    keys.add(key(block, col));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param cellRegions
+     * @return <code>true</code> if the regions reach beyond the current
+     * bounds of the table
+     */
+    private boolean exceeds(List<int[]> cellRegions) {
+        for (int[] region : cellRegions) {
+            if (region[0] < table.getRow0() || region[2] > table.getRowEnd() || region[1] < table.getCol0() || region[3] > table.getColEnd()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long key(long block, int col) {
+        return (block << 32) ^ (col & 0xffffffffL);
+    }
+
+    private static boolean contains(List<int[]> cellRegions, int row, int col) {
+        for (int[] region : cellRegions) {
+            if (row >= region[0] && row <= region[2] && col >= region[1] && col <= region[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param row The logical row index
+     * @param col The logical column index
+     * @return The formulas reading the slot directly
+     */
+    private List<FormulaCell> dependents(int row, int col) {
+        Set<FormulaCell> cells = index.get(key(Math.floorDiv(row, BLOCK_SIZE), col));
+        if (cells == null) {
+            return Collections.emptyList();
+        }
+        List<FormulaCell> dependents = new ArrayList<>();
+        for (FormulaCell cell : cells) {
+            if (contains(regions.get(cell), row, col)) {
+                dependents.add(cell);
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * @param roots
+     * @return The given formulas and all formulas depending on them
+     */
+    private Set<FormulaCell> closure(List<FormulaCell> roots) {
+        Set<FormulaCell> closure = new LinkedHashSet<>(roots);
+        Deque<FormulaCell> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            int[] position = positions.get(queue.poll());
+            for (FormulaCell dependent : dependents(position[0], position[1])) {
+                if (closure.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Evaluate formulas so that each is evaluated after all formulas of the
+     * set it depends on. Formulas which are part of a cycle are not
+     * evaluated.
+     *
+     * @param cells
+     */
+    private void recompute(Set<FormulaCell> cells) {
+        List<FormulaCell> order = order(cells);
+        evaluate(order == null ? Collections.emptyList() : order);
+    }
+
+    /**
+     * @param cells
+     * @return The formulas of the set ordered so that each follows all
+     * formulas of the set it depends on, or <code>null</code> if they depend
+     * on each other in a cycle
+     */
+    private List<FormulaCell> order(Set<FormulaCell> cells) {
+        Map<FormulaCell, List<FormulaCell>> edges = new HashMap<>();
+        Map<FormulaCell, Integer> inputs = new HashMap<>();
+        for (FormulaCell cell : cells) {
+            int[] position = positions.get(cell);
+            List<FormulaCell> dependents = dependents(position[0], position[1]);
+            edges.put(cell, dependents);
+            for (FormulaCell dependent : dependents) {
+                inputs.merge(dependent, 1, Integer::sum);
+            }
+        }
+        Deque<FormulaCell> ready = new ArrayDeque<>();
+        for (FormulaCell cell : cells) {
+            if (!inputs.containsKey(cell)) {
+                ready.add(cell);
+            }
+        }
+        List<FormulaCell> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            FormulaCell cell = ready.poll();
+            order.add(cell);
+            for (FormulaCell dependent : edges.get(cell)) {
+                if (inputs.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return order.size() == cells.size() ? order : null;
+    }
+
+    private void evaluate(List<FormulaCell> order) {
+        for (FormulaCell cell : order) {
+            if (cell.evaluate(table)) {
+                int[] position = positions.get(cell);
+                table.valueChanged(position[0], position[1],
+                        position[0] + cell.getRowSpan() - 1, position[1] + cell.getColSpan() - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.ml.table;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A cell whose anonymous content is computed by a function when it is
+ * accessed for the first time, for example when a writer renders the cell.
+ * The result is kept, so the function is called at most once. Cells which are
+ * never visited, because they are outside of a view or of the pages written,
+ * are never computed.
+ * <p>
+ * The function receives the table holding the cell and the location of the
+ * cell in it, see {@link Table#setCell(Cell, int, int)}. Accessing the
+ * content before the cell has been added is an error. Until the content has
+ * been computed, a lazy cell can only be added to one table at one location;
+ * {@link Table#addTable(Table, int, int)} adds copies.
+ *
+ * @author mlaux
+ */
+public class LazyCell extends Cell {
+
+    private final CellFunction function;
+    private volatile boolean computed = false;
+    private boolean computing = false;
+    private WeakReference<Table> table = null;
+    private int row;
+    private int col;
+
+    /**
+     * Constructor for a lazy cell with 1 row and 1 column
+     *
+     * @param function
+     */
+    public LazyCell(CellFunction function) {
+        this(1, 1, function);
+    }
+
+    /**
+     * @param rowSpan The number of rows that this cell spans
+     * @param colSpan The number of columns that this cell spans
+     * @param function Computes the anonymous content
+     */
+    public LazyCell(int rowSpan, int colSpan, CellFunction function) {
+        super(rowSpan, colSpan);
+        if (function == null) {
+            throw new NullPointerException("function may not be null");
+        }
+        this.function = function;
+    }
+
+    /**
+     * @return <code>true</code> if the content has been computed or set
+     */
+    public boolean isComputed() {
+        return computed;
+    }
+
+    @Override
+    public Object getContent() {
+        if (!computed) {
+            compute();
+        }
+        return super.getContent();
+    }
+
+    /**
+     * Setting the content explicitly replaces the function
+     *
+     * @param value
+     * @return
+     */
+    @Override
+    public synchronized Cell setContent(Object value) {
+        super.setContent(value);
+        computed = true;
+        return this;
+    }
+
+    /**
+     * @return A new lazy cell with the same function, contents, style and
+     * hints, which has not been added to a table
+     */
+    LazyCell copy() {
+        LazyCell copy = new LazyCell(getRowSpan(), getColSpan(), function);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * @return <code>true</code> if the content still has to be computed for
+     * a table holding the cell
+     */
+    synchronized boolean isHeld() {
+        return !computed && table != null && table.get() != null;
+    }
+
+    /**
+     * Remember the table holding the cell and the location of the cell, after
+     * it has been added or moved
+     *
+     * @param table
+     * @param row The logical row index of the top left slot
+     * @param col The logical column index of the top left slot
+     */
+    synchronized void place(Table table, int row, int col) {
+        this.table = new WeakReference<>(table);
+        this.row = row;
+        this.col = col;
+    }
+
+    /**
+     * Forget a table the cell has been removed from
+     *
+     * @param table
+     */
+    synchronized void remove(Table table) {
+        if (this.table != null && this.table.get() == table) {
+            this.table = null;
+        }
+    }
+
+    private synchronized void compute() {
+        if (computed) {
+            return;
+        }
+        Table holder = table == null ? null : table.get();
+        if (holder == null) {
+            throw new IllegalStateException("Lazy cells must be added to a table before their content is accessed");
+        }
+        if (computing) {
+            throw new IllegalStateException("Cyclic dependency when computing the cell at (" + row + "/" + col + ")");
+        }
+        computing = true;
+        try {
+            Object value = function.compute(row, col, holder);
+            if (value != null) {
+                storeContent(value);
+            }
+            computed = true;
+        } finally {
+            computing = false;
+        }
+    }
+}
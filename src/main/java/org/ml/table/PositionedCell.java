@@ -0,0 +1,73 @@
+package org.ml.table;
+
+/**
+ * A cell together with its location in a table, as delivered by the streams
+ * of {@link Table}
+ *
+ * @author mlaux
+ */
+public final class PositionedCell {
+
+    private final int row;
+    private final int col;
+    private final Cell cell;
+    private final boolean visible;
+    private final boolean defaultCell;
+
+    /**
+     * @param row The logical row index
+     * @param col The logical column index
+     * @param cell
+     * @param visible
+     * @param defaultCell
+     */
+    PositionedCell(int row, int col, Cell cell, boolean visible, boolean defaultCell) {
+        this.row = row;
+        this.col = col;
+        this.cell = cell;
+        this.visible = visible;
+        this.defaultCell = defaultCell;
+    }
+
+    /**
+     * @return The logical row index
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return The logical column index
+     */
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * @return The cell at the location. Invisible slots refer to the cell
+     * spanning them, empty slots to {@link Table#DEFAULT_CELL}
+     */
+    public Cell getCell() {
+        return cell;
+    }
+
+    /**
+     * @return <code>false</code> if the slot is covered by a cell spanning
+     * more than one row and/or column
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * @return <code>true</code> if the slot is empty
+     */
+    public boolean isDefaultCell() {
+        return defaultCell;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + row + "/" + col + ") " + (defaultCell ? "default" : cell.getContent()) + (visible ? "" : " (hidden)");
+    }
+}
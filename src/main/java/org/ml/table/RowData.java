@@ -0,0 +1,49 @@
+package org.ml.table;
+
+/**
+ * The slots of one table row as handed out by {@link Table#loadRow(int,
+ * RowData)}. For tables these are the storage arrays themselves, for views
+ * buffers owned by this instance which are filled for each row. An instance
+ * belongs to one traversal and is not shared between threads.
+ *
+ * @author mlaux
+ */
+final class RowData {
+
+    Cell[] cells;
+    boolean[] visible;
+    boolean[] def;
+    private Cell[] ownCells;
+    private boolean[] ownVisible;
+    private boolean[] ownDef;
+    private RowData part;
+
+    /**
+     * Point the row to the buffers of this instance
+     *
+     * @param colNumber
+     * @return
+     */
+    RowData buffers(int colNumber) {
+        if (ownCells == null || ownCells.length != colNumber) {
+            ownCells = new Cell[colNumber];
+            ownVisible = new boolean[colNumber];
+            ownDef = new boolean[colNumber];
+        }
+        cells = ownCells;
+        visible = ownVisible;
+        def = ownDef;
+        return this;
+    }
+
+    /**
+     * @return Row data owned by this instance for loading rows of tables a
+     * view is composed of
+     */
+    RowData part() {
+        if (part == null) {
+            part = new RowData();
+        }
+        return part;
+    }
+}
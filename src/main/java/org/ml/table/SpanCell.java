@@ -0,0 +1,103 @@
+package org.ml.table;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cell as seen through a table view: it has the content of another cell,
+ * but different spans. Content can only be changed through the original cell.
+ *
+ * @author mlaux
+ */
+final class SpanCell extends Cell {
+
+    private final Cell source;
+
+    /**
+     * @param cell The cell to show
+     * @param rowSpan
+     * @param colSpan
+     */
+    SpanCell(Cell cell, int rowSpan, int colSpan) {
+        super(rowSpan, colSpan);
+        this.source = source(cell);
+    }
+
+    /**
+     * @param cell
+     * @return The cell in the table storage the given cell refers to
+     */
+    static Cell source(Cell cell) {
+        return cell instanceof SpanCell ? ((SpanCell) cell).source : cell;
+    }
+
+    @Override
+    public boolean containsHint(String hint) {
+        return source.containsHint(hint);
+    }
+
+    @Override
+    public boolean containsHint(Enum hint) {
+        return source.containsHint(hint);
+    }
+
+    @Override
+    public Cell addHint(String hint) {
+        throw new UnsupportedOperationException("Cells of table views are read-only");
+    }
+
+    @Override
+    public Cell addHint(Enum hint) {
+        throw new UnsupportedOperationException("Cells of table views are read-only");
+    }
+
+    @Override
+    public Cell setStyle(Enum style) {
+        throw new UnsupportedOperationException("Cells of table views are read-only");
+    }
+
+    @Override
+    public Enum getStyle() {
+        return source.getStyle();
+    }
+
+    @Override
+    public Set<String> getHints() {
+        return source.getHints();
+    }
+
+    @Override
+    public Map<String, Object> getContents() {
+        return source.getContents();
+    }
+
+    @Override
+    public Object getContent(String key) {
+        return source.getContent(key);
+    }
+
+    @Override
+    public Object getContent() {
+        return source.getContent();
+    }
+
+    @Override
+    public Cell setContent(String key, Object value) {
+        throw new UnsupportedOperationException("Cells of table views are read-only");
+    }
+
+    @Override
+    public Cell setContent(Object value) {
+        throw new UnsupportedOperationException("Cells of table views are read-only");
+    }
+
+    @Override
+    public Cell setContent(Enum key, Object value) {
+        throw new UnsupportedOperationException("Cells of table views are read-only");
+    }
+
+    @Override
+    public boolean hasContent(String key) {
+        return source.hasContent(key);
+    }
+}
@@ -0,0 +1,98 @@
+package org.ml.table;
+
+import java.util.Map;
+
+/**
+ * A rectangular part of a table, see {@link Table#view(int, int, int, int)}.
+ * Logical indices are those of the underlying table. Cells spanning across
+ * the edge of the view are clipped: the part inside the view is shown as a
+ * cell of its own, anchored at its top left slot within the view.
+ *
+ * @author mlaux
+ */
+class SubTableView extends TableView {
+
+    private final int rowOffset;
+    private final int colOffset;
+
+    /**
+     * @param base
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowNumber
+     * @param colNumber
+     */
+    SubTableView(Table base, int rowFrom, int colFrom, int rowNumber, int colNumber) {
+        super(base, rowFrom, colFrom, rowNumber, colNumber);
+        rowOffset = rowFrom - base.getRow0();
+        colOffset = colFrom - base.getCol0();
+    }
+
+    @Override
+    Cell cellAt(int r, int c) {
+        int br = r + rowOffset;
+        int bc = c + colOffset;
+        Cell cell = base.cellAt(br, bc);
+        if (base.defaultAt(br, bc) || !visibleAt(r, c)) {
+            return cell;
+        }
+        return clip(cell, br, bc);
+    }
+
+    @Override
+    boolean visibleAt(int r, int c) {
+        int br = r + rowOffset;
+        int bc = c + colOffset;
+        if (base.visibleAt(br, bc)) {
+            return true;
+        }
+
+        //.... A covered slot becomes visible if it is the top left slot of the part of its cell inside the view
+        if (r > 0 && c > 0) {
+            return false;
+        }
+        Cell source = SpanCell.source(base.cellAt(br, bc));
+        return (r == 0 || SpanCell.source(base.cellAt(br - 1, bc)) != source)
+                && (c == 0 || SpanCell.source(base.cellAt(br, bc - 1)) != source);
+    }
+
+    @Override
+    boolean defaultAt(int r, int c) {
+        return base.defaultAt(r + rowOffset, c + colOffset);
+    }
+
+    @Override
+    Map<String, String> getTags(Direction tagLocation, int logicalIndex) {
+        return base.getTags(tagLocation, logicalIndex);
+    }
+
+    /**
+     * Reduce the spans of a cell visible in the view to the part inside the
+     * view
+     *
+     * @param cell
+     * @param br The row in the underlying table
+     * @param bc The column in the underlying table
+     * @return
+     */
+    private Cell clip(Cell cell, int br, int bc) {
+        int ar = br;
+        int ac = bc;
+        if (!base.visibleAt(br, bc)) {
+            Cell source = SpanCell.source(cell);
+            while (ar > 0 && SpanCell.source(base.cellAt(ar - 1, bc)) == source) {
+                ar--;
+            }
+            while (ac > 0 && SpanCell.source(base.cellAt(ar, ac - 1)) == source) {
+                ac--;
+            }
+        }
+        Cell anchor = base.cellAt(ar, ac);
+        int rowSpan = Math.min(ar + anchor.getRowSpan(), rowOffset + getRowNumber()) - br;
+        int colSpan = Math.min(ac + anchor.getColSpan(), colOffset + getColNumber()) - bc;
+        if (rowSpan == cell.getRowSpan() && colSpan == cell.getColSpan()) {
+            return cell;
+        }
+        return new SpanCell(cell, rowSpan, colSpan);
+    }
+}
@@ -9,9 +9,14 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is the central class for handling data for tables. Effectively,
@@ -52,6 +57,13 @@ public class Table {
     private boolean[][] def;          // Mark whether a cell contains the default cell
     private final Map<IBoundaryLocation, BoundaryCondition> boundaryConditions = new HashMap<>();
     private final Map<RenderingContext, IRenderer> renderers = new HashMap<>();
+    private FormulaGraph formulas = null;
+    private ChangeTracker changes = null;
+    private List<TableListener> listeners = null;
+    private List<TableEvent> pendingEvents = null;
+    private int batchDepth = 0;
+    private int muted = 0;
+    private boolean bound = false;
 
     /**
      * @since 1.1
@@ -97,6 +109,18 @@ public class Table {
      * @param colNumber Number of columns for the table
      */
     public Table(int row0, int col0, int rowNumber, int colNumber) {
+        this(row0, col0, rowNumber, colNumber, true);
+    }
+
+    /**
+     * @param row0
+     * @param col0
+     * @param rowNumber
+     * @param colNumber
+     * @param allocate <code>false</code> for views, which have no storage of
+     * their own
+     */
+    Table(int row0, int col0, int rowNumber, int colNumber, boolean allocate) {
         if (rowNumber < 1) {
             throw new IllegalArgumentException("rowNumber must be larger than 0");
         }
@@ -112,6 +136,16 @@ public class Table {
         rowEnd = row0 + rowNumber - 1;  // Helper
         colEnd = col0 + colNumber - 1;
 
+        //.... The default boundary conditions
+        boundaryConditions.put(ColumnLocation.LEFT, BoundaryCondition.FIXED);
+        boundaryConditions.put(ColumnLocation.RIGHT, BoundaryCondition.FIXED);
+        boundaryConditions.put(RowLocation.TOP, BoundaryCondition.FIXED);
+        boundaryConditions.put(RowLocation.BOTTOM, BoundaryCondition.FIXED);
+
+        if (!allocate) {
+            return;
+        }
+
         cells = new Cell[rowNumber][colNumber];
         visible = new boolean[rowNumber][colNumber];
         def = new boolean[rowNumber][colNumber];
@@ -123,13 +157,6 @@ public class Table {
                 cells[r][c] = DEFAULT_CELL;
             }
         }
-
-        //.... The default boundary conditions
-        boundaryConditions.put(ColumnLocation.LEFT, BoundaryCondition.FIXED);
-        boundaryConditions.put(ColumnLocation.RIGHT, BoundaryCondition.FIXED);
-        boundaryConditions.put(RowLocation.TOP, BoundaryCondition.FIXED);
-        boundaryConditions.put(RowLocation.BOTTOM, BoundaryCondition.FIXED);
-
     }
 
     /**
@@ -163,7 +190,28 @@ public class Table {
         if (!tags.get(tagLocation).containsKey(logicalIndex)) {
             tags.get(tagLocation).put(logicalIndex, new HashMap<>());
         }
-        tags.get(tagLocation).get(logicalIndex).put(tagName, tagValue);
+        Map<String, String> indexTags = tags.get(tagLocation).get(logicalIndex);
+        String previous = indexTags.put(tagName, tagValue);
+
+        //.... A formula aggregating tagged rows must not read itself through the tag
+        if (formulas != null && tagLocation == Direction.ROW) {
+            try {
+                formulas.tagsChanged(tagName);
+            } catch (IllegalArgumentException ex) {
+                if (previous == null) {
+                    indexTags.remove(tagName);
+                } else {
+                    indexTags.put(tagName, previous);
+                }
+                formulas.tagsChanged(tagName);
+                throw ex;
+            }
+        }
+        if (tagLocation == Direction.ROW) {
+            markChanged(logicalIndex, col0, logicalIndex, colEnd);
+        } else {
+            markChanged(row0, logicalIndex, rowEnd, logicalIndex);
+        }
     }
 
     /**
@@ -195,10 +243,8 @@ public class Table {
         checkLogicalIndex(tagLocation, logicalIndex);
 
         //.... Search for the tag
-        if (tags == null || !tags.containsKey(tagLocation) || !tags.get(tagLocation).containsKey(logicalIndex)) {
-            return false;
-        }
-        return tags.get(tagLocation).get(logicalIndex).containsKey(tagName);
+        Map<String, String> indexTags = getTags(tagLocation, logicalIndex);
+        return indexTags != null && indexTags.containsKey(tagName);
     }
 
     /**
@@ -216,10 +262,21 @@ public class Table {
         checkLogicalIndex(tagLocation, logicalIndex);
 
         //.... Search for the tag
-        if (tags == null || !tags.containsKey(tagLocation) || !tags.get(tagLocation).containsKey(logicalIndex)) {
+        Map<String, String> indexTags = getTags(tagLocation, logicalIndex);
+        return indexTags != null ? indexTags.get(tagName) : null;
+    }
+
+    /**
+     * @param tagLocation
+     * @param logicalIndex
+     * @return The tags of the row or column, or <code>null</code> if there are
+     * none
+     */
+    Map<String, String> getTags(Direction tagLocation, int logicalIndex) {
+        if (tags == null || !tags.containsKey(tagLocation)) {
             return null;
         }
-        return tags.get(tagLocation).get(logicalIndex).get(tagName);
+        return tags.get(tagLocation).get(logicalIndex);
     }
 
     /**
@@ -263,8 +320,27 @@ public class Table {
             throw new IllegalArgumentException("internalLocation may not be null");
         }
 
+        //.... The cells created are reported as one event
+        int count;
+        muted++;
+        try {
+            count = coalesceSlots(internalLocation);
+        } finally {
+            muted--;
+        }
+        if (count > 0) {
+            fire(TableEvent.Type.COALESCED, row0, col0, rowEnd, colEnd, count);
+        }
+        return count > 0;
+    }
+
+    /**
+     * @param internalLocation
+     * @return The number of cells created
+     */
+    private int coalesceSlots(InternalLocation internalLocation) {
         Cell cell;
-        boolean coalesced = false;
+        int count = 0;
 
         switch (internalLocation) {
 
@@ -286,7 +362,7 @@ public class Table {
 
                             setCell(cell, r + row0, cstart + col0);
                             scanning = false;
-                            coalesced = true;
+                            count++;
 
                         }
                         c++;
@@ -298,7 +374,7 @@ public class Table {
                         cell = new Cell(1, c - cstart);
 
                         setCell(cell, r + row0, cstart + col0);
-                        coalesced = true;
+                        count++;
 
                     }
 
@@ -324,7 +400,7 @@ public class Table {
 
                             setCell(cell, rstart + row0, c + col0);
                             scanning = false;
-                            coalesced = true;
+                            count++;
 
                         }
                         r++;
@@ -336,7 +412,7 @@ public class Table {
                         cell = new Cell(r - rstart, 1);
 
                         setCell(cell, rstart + row0, c + col0);
-                        coalesced = true;
+                        count++;
 
                     }
 
@@ -344,7 +420,7 @@ public class Table {
 
         }
 
-        return coalesced;
+        return count;
 
     }
 
@@ -427,6 +503,15 @@ public class Table {
 
         colNumber += count;
 
+        //.... The new columns are changed
+        int colFrom = location == ColumnLocation.LEFT ? col0 : colEnd - count + 1;
+        markChanged(row0, colFrom, rowEnd, colFrom + count - 1);
+        fire(TableEvent.Type.COLUMNS_ADDED, row0, colFrom, rowEnd, colFrom + count - 1, count);
+
+        //.... Ranges of formulas may now reach further into the table
+        if (formulas != null) {
+            formulas.grown(row0, colFrom, rowEnd, colFrom + count - 1);
+        }
     }
 
     /**
@@ -518,6 +603,15 @@ public class Table {
 
         rowNumber += count;
 
+        //.... The new rows are changed
+        int rowFrom = location == RowLocation.TOP ? row0 : rowEnd - count + 1;
+        markChanged(rowFrom, col0, rowFrom + count - 1, colEnd);
+        fire(TableEvent.Type.ROWS_ADDED, rowFrom, col0, rowFrom + count - 1, colEnd, count);
+
+        //.... Ranges of formulas may now reach further into the table
+        if (formulas != null) {
+            formulas.grown(rowFrom, col0, rowFrom + count - 1, colEnd);
+        }
     }
 
     /**
@@ -547,7 +641,12 @@ public class Table {
         if (isEmpty()) {
             throw new UnsupportedOperationException("The table has no cells defined - compacting it would make it disappear. Is this the expected behaviour here?");
         }
-        return compact(ColumnLocation.LEFT) | compact(ColumnLocation.RIGHT) | compact(RowLocation.TOP) | compact(RowLocation.BOTTOM);
+        beginBatch();
+        try {
+            return compact(ColumnLocation.LEFT) | compact(ColumnLocation.RIGHT) | compact(RowLocation.TOP) | compact(RowLocation.BOTTOM);
+        } finally {
+            endBatch();
+        }
     }
 
     /**
@@ -570,14 +669,19 @@ public class Table {
 
         boolean ret = false;
 
-        for (ILocation location : locations) {
-            if (location instanceof ColumnLocation) {
-                ret = ret | compact((ColumnLocation) location);
-            } else if (location instanceof RowLocation) {
-                ret = ret | compact((RowLocation) location);
-            } else if (location instanceof InternalLocation) {
-                ret = ret | compact((InternalLocation) location);
+        beginBatch();
+        try {
+            for (ILocation location : locations) {
+                if (location instanceof ColumnLocation) {
+                    ret = ret | compact((ColumnLocation) location);
+                } else if (location instanceof RowLocation) {
+                    ret = ret | compact((RowLocation) location);
+                } else if (location instanceof InternalLocation) {
+                    ret = ret | compact((InternalLocation) location);
+                }
             }
+        } finally {
+            endBatch();
         }
 
         return ret;
@@ -704,7 +808,12 @@ public class Table {
         colNumber -= count;
 
         //.... Check whether the dimensions of the table have changed
-        return row0 != old_row0 || col0 != old_col0 || rowNumber != old_rowNumber || colNumber != old_colNumber;
+        boolean changed = row0 != old_row0 || col0 != old_col0 || rowNumber != old_rowNumber || colNumber != old_colNumber;
+
+        if (changed) {
+            compacted(old_rowNumber - rowNumber + old_colNumber - colNumber);
+        }
+        return changed;
 
     }
 
@@ -827,7 +936,12 @@ public class Table {
         rowNumber -= count;
 
         //.... Check whether the dimensions of the table have changed
-        return row0 != old_row0 || col0 != old_col0 || rowNumber != old_rowNumber || colNumber != old_colNumber;
+        boolean changed = row0 != old_row0 || col0 != old_col0 || rowNumber != old_rowNumber || colNumber != old_colNumber;
+
+        if (changed) {
+            compacted(old_rowNumber - rowNumber + old_colNumber - colNumber);
+        }
+        return changed;
 
     }
 
@@ -1002,7 +1116,14 @@ public class Table {
         }
 
         //.... Check whether the dimensions of the table have changed
-        return row0 != old_row0 || col0 != old_col0 || rowNumber != old_rowNumber || colNumber != old_colNumber;
+        boolean changed = row0 != old_row0 || col0 != old_col0 || rowNumber != old_rowNumber || colNumber != old_colNumber;
+
+        //.... Cells have moved to other logical indices
+        if (changed) {
+            bindCells();
+            compacted(old_rowNumber - rowNumber + old_colNumber - colNumber);
+        }
+        return changed;
 
     }
 
@@ -1134,7 +1255,7 @@ public class Table {
         if (c >= colNumber || c < 0) {
             throw new IllegalArgumentException("col must be between " + col0 + " and " + getColEnd());
         }
-        return cells[r][c];
+        return cellAt(r, c);
     }
 
     /**
@@ -1159,7 +1280,7 @@ public class Table {
         if (c >= colNumber || c < 0) {
             throw new IllegalArgumentException("col must be between " + col0 + " and " + getColEnd());
         }
-        return visible[r][c];
+        return visibleAt(r, c);
     }
 
     /**
@@ -1183,6 +1304,208 @@ public class Table {
         if (c >= colNumber || c < 0) {
             throw new IllegalArgumentException("col must be between " + col0 + " and " + getColEnd());
         }
+        return defaultAt(r, c);
+    }
+
+    /**
+     * Check whether the table can be cut above the given row.
+     * <p>
+     * This is the case if no cell spanning more than one row covers both the
+     * given row and the row before it. The first row and the (non-existing)
+     * row after the last row are always boundaries. Row ranges between two
+     * boundaries can be rendered independently of each other.
+     *
+     * @param row The logical row index, which may be one larger than the last
+     * row
+     * @return <code>true</code> if no cell crosses the upper edge of the row
+     */
+    public boolean isRowBoundary(int row) {
+        int r = row - row0;
+
+        if (r > rowNumber || r < 0) {
+            throw new IllegalArgumentException("row must be between " + row0 + " and " + (getRowEnd() + 1));
+        }
+        if (r == 0 || r == rowNumber) {
+            return true;
+        }
+        for (int c = 0; c < colNumber; c++) {
+            if (!visible[r][c] && !def[r][c] && cells[r][c] == cells[r - 1][c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create a cursor over all rows of the table
+     *
+     * @return
+     */
+    public CellCursor cursor() {
+        return new CellCursor(this, row0, rowEnd + 1);
+    }
+
+    /**
+     * Create a cursor over a range of rows
+     *
+     * @param from The logical index of the first row
+     * @param to The logical index of the row after the last row
+     * @return
+     */
+    public CellCursor cursor(int from, int to) {
+        return new CellCursor(this, from, to);
+    }
+
+    /**
+     * Visit all slots of the table, including the invisible ones
+     *
+     * @param visitor
+     */
+    public void forEachCell(CellVisitor visitor) {
+        if (visitor == null) {
+            throw new NullPointerException("visitor may not be null");
+        }
+        RowData data = new RowData();
+        for (int r = 0; r < rowNumber; r++) {
+            loadRow(r, data);
+            for (int c = 0; c < colNumber; c++) {
+                visitor.visit(r + row0, c + col0, data.cells[c], data.visible[c], data.def[c]);
+            }
+        }
+    }
+
+    /**
+     * Visit the visible slots of the table, i.e. the cells which are rendered
+     *
+     * @param visitor
+     */
+    public void forEachVisibleCell(CellVisitor visitor) {
+        if (visitor == null) {
+            throw new NullPointerException("visitor may not be null");
+        }
+        RowData data = new RowData();
+        for (int r = 0; r < rowNumber; r++) {
+            loadRow(r, data);
+            for (int c = 0; c < colNumber; c++) {
+                if (data.visible[c]) {
+                    visitor.visit(r + row0, c + col0, data.cells[c], true, data.def[c]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A stream of all slots of the table, including the invisible ones, in
+     * row order. The stream splits into bands of rows for parallel
+     * processing. The table may not be modified while the stream is used.
+     *
+     * @return
+     */
+    public Stream<PositionedCell> cells() {
+        return StreamSupport.stream(new CellSpliterator(this, false), false);
+    }
+
+    /**
+     * A stream of the visible slots of the table, i.e. the cells which are
+     * rendered, in row order. The stream splits into bands of rows for
+     * parallel processing. The table may not be modified while the stream is
+     * used.
+     *
+     * @return
+     */
+    public Stream<PositionedCell> visibleCells() {
+        return StreamSupport.stream(new CellSpliterator(this, true), false);
+    }
+
+    /**
+     * A stream of the table rows, each given as the list of all its slots.
+     * The table may not be modified while the stream is used.
+     *
+     * @return
+     */
+    public Stream<List<PositionedCell>> rows() {
+        return IntStream.range(0, rowNumber).mapToObj(r -> {
+            RowData data = loadRow(r, new RowData());
+            List<PositionedCell> row = new ArrayList<>(colNumber);
+            for (int c = 0; c < colNumber; c++) {
+                row.add(new PositionedCell(r + row0, c + col0, data.cells[c], data.visible[c], data.def[c]));
+            }
+            return Collections.unmodifiableList(row);
+        });
+    }
+
+    /**
+     * A read-only view of a rectangular part of the table. The view shares
+     * the cells with the table, so creating it does not depend on its size.
+     * Logical indices in the view are the same as in the table. Cells spanning
+     * across the edge of the view are shown clipped to the view.
+     *
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowTo The logical index of the row after the last row
+     * @param colTo The logical index of the column after the last column
+     * @return
+     */
+    public Table view(int rowFrom, int colFrom, int rowTo, int colTo) {
+        if (rowFrom < row0 || rowTo > rowEnd + 1 || rowFrom >= rowTo) {
+            throw new IllegalArgumentException("Rows must be a non-empty range between " + row0 + " and " + (rowEnd + 1));
+        }
+        if (colFrom < col0 || colTo > colEnd + 1 || colFrom >= colTo) {
+            throw new IllegalArgumentException("Columns must be a non-empty range between " + col0 + " and " + (colEnd + 1));
+        }
+        return new SubTableView(this, rowFrom, colFrom, rowTo - rowFrom, colTo - colFrom);
+    }
+
+    /**
+     * A read-only view of the table with rows and columns swapped. The view
+     * shares the cells with the table. Row tags of the table are column tags
+     * of the view and vice versa, and the spans of cells are swapped.
+     *
+     * @return
+     */
+    public Table transposedView() {
+        return new TransposedTableView(this);
+    }
+
+    /**
+     * Point the row data to the slots of a row. Tables hand out their storage
+     * arrays, views fill the buffers of the row data.
+     *
+     * @param r The internal row index
+     * @param data
+     * @return The row data
+     */
+    RowData loadRow(int r, RowData data) {
+        data.cells = cells[r];
+        data.visible = visible[r];
+        data.def = def[r];
+        return data;
+    }
+
+    /**
+     * @param r The internal row index
+     * @param c The internal column index
+     * @return
+     */
+    Cell cellAt(int r, int c) {
+        return cells[r][c];
+    }
+
+    /**
+     * @param r The internal row index
+     * @param c The internal column index
+     * @return
+     */
+    boolean visibleAt(int r, int c) {
+        return visible[r][c];
+    }
+
+    /**
+     * @param r The internal row index
+     * @param c The internal column index
+     * @return
+     */
+    boolean defaultAt(int r, int c) {
         return def[r][c];
     }
 
@@ -1685,6 +2008,18 @@ public class Table {
             cell.setColSpan(cEnd - c + 1);
         }
 
+        //.... Formulas must not depend on themselves, directly or indirectly
+        if (cell instanceof FormulaCell) {
+            if (formulas == null) {
+                formulas = new FormulaGraph(this);
+                updateBindings();
+            }
+            formulas.check((FormulaCell) cell, r + row0, c + col0);
+        }
+        if (cell instanceof LazyCell && ((LazyCell) cell).isHeld()) {
+            throw new IllegalArgumentException("Lazy cells can only be added to one table at one location before they are computed");
+        }
+
         //.... Now actually fill the table where necessary
         for (int rIndex = r; rIndex <= rEnd; rIndex++) {
             for (int cIndex = c; cIndex <= cEnd; cIndex++) {
@@ -1698,6 +2033,20 @@ public class Table {
         }
         visible[r][c] = true;    // Only this one remains, all others are now hidden
 
+        if (bound && cell != DEFAULT_CELL) {
+            cell.bind(this, r + row0, c + col0);
+        }
+        if (cell instanceof LazyCell) {
+            ((LazyCell) cell).place(this, r + row0, c + col0);
+        }
+        markChanged(r + row0, c + col0, rEnd + row0, cEnd + col0);
+        fire(TableEvent.Type.CELLS_SET, r + row0, c + col0, rEnd + row0, cEnd + col0, 1);
+        if (cell instanceof FormulaCell) {
+            formulas.add((FormulaCell) cell, r + row0, c + col0);
+        } else if (formulas != null) {
+            formulas.changed(r + row0, c + col0);
+        }
+
         result.setRow(r + row0);
         result.setCol(c + col0);
         result.setRowEnd(rEnd + row0);
@@ -1707,6 +2056,371 @@ public class Table {
     }
 
     /**
+     * Remove the cell covering the given location. The slots covered by the
+     * cell are reset to the default cell.
+     *
+     * @param row The logical row index
+     * @param col The logical column index
+     * @return The cell removed, or <code>null</code> if the location is not
+     * covered by a cell
+     */
+    public Cell clearCell(int row, int col) {
+        int r = row - row0;
+        int c = col - col0;
+
+        if (r >= rowNumber || r < 0) {
+            throw new IllegalArgumentException("row must be between " + row0 + " and " + getRowEnd());
+        }
+        if (c >= colNumber || c < 0) {
+            throw new IllegalArgumentException("col must be between " + col0 + " and " + getColEnd());
+        }
+        if (def[r][c]) {
+            return null;
+        }
+        Cell cell = cells[r][c];
+
+        //.... Find the top left slot of the cell
+        while (!visible[r][c] && r > 0 && cells[r - 1][c] == cell) {
+            r--;
+        }
+        while (!visible[r][c] && c > 0 && cells[r][c - 1] == cell) {
+            c--;
+        }
+        int rEnd = r + cell.getRowSpan() - 1;
+        int cEnd = c + cell.getColSpan() - 1;
+        for (int rIndex = r; rIndex <= rEnd; rIndex++) {
+            for (int cIndex = c; cIndex <= cEnd; cIndex++) {
+                cells[rIndex][cIndex] = DEFAULT_CELL;
+                visible[rIndex][cIndex] = true;
+                def[rIndex][cIndex] = true;
+            }
+        }
+
+        if (bound) {
+            cell.unbind(this);
+        }
+        if (cell instanceof LazyCell) {
+            ((LazyCell) cell).remove(this);
+        }
+        markChanged(r + row0, c + col0, rEnd + row0, cEnd + col0);
+        fire(TableEvent.Type.CELLS_CLEARED, r + row0, c + col0, rEnd + row0, cEnd + col0, 1);
+        if (formulas != null) {
+            if (cell instanceof FormulaCell) {
+                formulas.remove((FormulaCell) cell);
+            }
+            formulas.changed(r + row0, c + col0);
+        }
+        return cell;
+    }
+
+    /**
+     * The formula of the cell at the given location
+     *
+     * @param row The logical row index
+     * @param col The logical column index
+     * @return The formula, or <code>null</code> if the slot does not hold a
+     * visible {@link FormulaCell}
+     */
+    public Formula getFormula(int row, int col) {
+        Cell cell = getCell(row, col);
+        if (!isVisible(row, col) || !(cell instanceof FormulaCell)) {
+            return null;
+        }
+        return ((FormulaCell) cell).getFormula();
+    }
+
+    /**
+     * Called by cells when they have been modified
+     *
+     * @param row The logical row index of the cell
+     * @param col The logical column index of the cell
+     * @param content <code>true</code> if the content has changed, else the
+     * style or the hints
+     */
+    void cellChanged(int row, int col, boolean content) {
+        int r = row - row0;
+        int c = col - col0;
+        if (r >= 0 && r < rowNumber && c >= 0 && c < colNumber) {
+            Cell cell = cells[r][c];
+            valueChanged(row, col, row + cell.getRowSpan() - 1, col + cell.getColSpan() - 1);
+        }
+        if (content && formulas != null) {
+            formulas.changed(row, col);
+        }
+    }
+
+    /**
+     * Record and report a change of the content or the presentation of a cell
+     *
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowEnd The logical index of the last row
+     * @param colEnd The logical index of the last column
+     */
+    void valueChanged(int rowFrom, int colFrom, int rowEnd, int colEnd) {
+        markChanged(rowFrom, colFrom, rowEnd, colEnd);
+        fire(TableEvent.Type.CELLS_CHANGED, rowFrom, colFrom, rowEnd, colEnd, 1);
+    }
+
+    /**
+     * Record and report that rows or columns have been removed
+     *
+     * @param count The number of rows and columns removed
+     */
+    private void compacted(int count) {
+        if (changes != null) {
+            changes.markResized();
+        }
+        fire(TableEvent.Type.COMPACTED, row0, col0, getRowEnd(), getColEnd(), count);
+    }
+
+    /**
+     * Register a listener for changes of the table. Listeners are called by
+     * the thread modifying the table, after the change has been applied.
+     *
+     * @param listener
+     */
+    public void addTableListener(TableListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener may not be null");
+        }
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        listeners.add(listener);
+        updateBindings();
+    }
+
+    /**
+     * @param listener
+     */
+    public void removeTableListener(TableListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener may not be null");
+        }
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+        updateBindings();
+    }
+
+    /**
+     * Perform several modifications as one batch. Listeners are informed and
+     * formulas are recomputed when the batch is complete, and consecutive
+     * events of the same type are merged into one if their regions together
+     * form a rectangle. Batches can be nested, the events are then delivered
+     * at the end of the outermost batch.
+     *
+     * @param modifications
+     */
+    public void batch(Runnable modifications) {
+        if (modifications == null) {
+            throw new NullPointerException("modifications may not be null");
+        }
+        beginBatch();
+        try {
+            modifications.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * @return <code>true</code> if a batch is in progress
+     */
+    boolean inBatch() {
+        return batchDepth > 0;
+    }
+
+    private void endBatch() {
+
+        //.... Formulas depending on slots changed in the batch are recomputed once, still within the batch
+        if (batchDepth == 1 && formulas != null) {
+            try {
+                formulas.flush();
+            } finally {
+                batchDepth--;
+            }
+        } else {
+            batchDepth--;
+        }
+        if (batchDepth > 0 || pendingEvents == null) {
+            return;
+        }
+        List<TableEvent> events = pendingEvents;
+        pendingEvents = null;
+        for (TableEvent event : events) {
+            deliver(event);
+        }
+    }
+
+    /**
+     * Report a change to the listeners, or add it to the current batch
+     *
+     * @param type
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowEnd The logical index of the last row
+     * @param colEnd The logical index of the last column
+     * @param count
+     */
+    private void fire(TableEvent.Type type, int rowFrom, int colFrom, int rowEnd, int colEnd, int count) {
+        if (listeners == null || listeners.isEmpty() || muted > 0) {
+            return;
+        }
+        TableEvent event = new TableEvent(this, type, rowFrom, colFrom, rowEnd, colEnd, count);
+        if (batchDepth == 0) {
+            deliver(event);
+            return;
+        }
+        if (pendingEvents == null) {
+            pendingEvents = new ArrayList<>();
+        }
+
+        //.... Consecutive events are merged if they form a rectangle
+        int last = pendingEvents.size() - 1;
+        if (last >= 0 && pendingEvents.get(last).canMerge(event)) {
+            pendingEvents.set(last, pendingEvents.get(last).merge(event));
+        } else {
+            pendingEvents.add(event);
+        }
+    }
+
+    private void deliver(TableEvent event) {
+        for (TableListener listener : listeners) {
+            listener.tableChanged(event);
+        }
+    }
+
+    /**
+     * Record a change of slots if change tracking is enabled
+     *
+     * @param rowFrom The logical index of the first row
+     * @param colFrom The logical index of the first column
+     * @param rowEnd The logical index of the last row
+     * @param colEnd The logical index of the last column
+     */
+    void markChanged(int rowFrom, int colFrom, int rowEnd, int colEnd) {
+        if (changes != null) {
+            changes.mark(rowFrom, colFrom, rowEnd, colEnd);
+        }
+    }
+
+    /**
+     * Enable or disable change tracking. When enabled, the table records the
+     * rows and columns modified since {@link #getChanges()} has been called
+     * last. Disabling change tracking discards the record.
+     *
+     * @param changeTracking
+     */
+    public void setChangeTracking(boolean changeTracking) {
+        if (!changeTracking) {
+            changes = null;
+        } else if (changes == null) {
+            changes = new ChangeTracker(row0, col0);
+        }
+        updateBindings();
+    }
+
+    /**
+     * @return <code>true</code> if change tracking is enabled
+     */
+    public boolean isChangeTracking() {
+        return changes != null;
+    }
+
+    /**
+     * Retrieve the changes recorded since the last call and clear the record
+     *
+     * @return The changes
+     * @throws IllegalStateException if change tracking is not enabled
+     */
+    public ChangeSet getChanges() {
+        if (changes == null) {
+            throw new IllegalStateException("Change tracking is not enabled");
+        }
+        return changes.drain(row0, col0);
+    }
+
+    /**
+     * The version increases with every change recorded while change tracking
+     * is enabled. Versions are unique across all tables and also increase
+     * when change tracking is disabled and enabled again.
+     *
+     * @return The current version, 0 if change tracking is not enabled
+     */
+    public long getVersion() {
+        return changes == null ? 0 : changes.getVersion();
+    }
+
+    /**
+     * The version of the last change recorded in a range of rows. Removing
+     * rows or columns, and enabling change tracking, count as a change of all
+     * rows.
+     *
+     * @param rowFrom The logical index of the first row
+     * @param rowTo The logical index of the row after the last row
+     * @return The version, 0 if change tracking is not enabled
+     */
+    public long getVersion(int rowFrom, int rowTo) {
+        return changes == null ? 0 : changes.getVersion(rowFrom, rowTo);
+    }
+
+    /**
+     * Cells only report their changes to tables which track changes, have
+     * listeners or contain formulas. Bind or unbind all cells when this
+     * changes.
+     */
+    private void updateBindings() {
+        boolean observed = changes != null || formulas != null || (listeners != null && !listeners.isEmpty());
+        if (observed == bound) {
+            return;
+        }
+        bound = observed;
+        for (int r = 0; r < rowNumber; r++) {
+            for (int c = 0; c < colNumber; c++) {
+                if (visible[r][c] && !def[r][c]) {
+                    if (bound) {
+                        cells[r][c].bind(this, r + row0, c + col0);
+                    } else {
+                        cells[r][c].unbind(this);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the locations remembered by the cells after they have been moved
+     */
+    private void bindCells() {
+        for (int r = 0; r < rowNumber; r++) {
+            for (int c = 0; c < colNumber; c++) {
+                if (visible[r][c] && !def[r][c]) {
+                    if (bound) {
+                        cells[r][c].bind(this, r + row0, c + col0);
+                    }
+                    if (cells[r][c] instanceof LazyCell) {
+                        ((LazyCell) cells[r][c]).place(this, r + row0, c + col0);
+                    }
+                }
+            }
+        }
+        if (formulas != null) {
+            formulas.rebuild();
+        }
+    }
+
+    /**
+     * Add the cells of another table at the given location. The cells are
+     * shared by both tables, except for formula cells and lazy cells which
+     * have not been computed yet: these are copied, and the formulas and
+     * functions of the copies refer to this table.
+     *
      * @param table
      * @param row0
      * @param col0
@@ -1715,13 +2429,22 @@ public class Table {
         if (table == null) {
             throw new NullPointerException("table may not be null");
         }
-        for (int row = table.row0; row <= table.rowEnd; row++) {
-            for (int col = table.col0; col <= table.colEnd; col++) {
-                if (table.isVisible(row, col)) {
-                    setCell(table.getCell(row, col), row0 + row, col0 + col);
-                }
-            }
+        batch(() -> table.forEachVisibleCell((row, col, cell, isVisible, isDefault) -> setCell(copyIfComputed(cell), row0 + row, col0 + col)));
+    }
+
+    /**
+     * @param cell A cell of another table
+     * @return A copy of the cell if its content is computed from the table
+     * holding it, else the cell
+     */
+    private static Cell copyIfComputed(Cell cell) {
+        if (cell instanceof FormulaCell) {
+            return ((FormulaCell) cell).copy();
         }
+        if (cell instanceof LazyCell && !((LazyCell) cell).isComputed()) {
+            return ((LazyCell) cell).copy();
+        }
+        return cell;
     }
 
     /**
@@ -1979,15 +2702,6 @@ public class Table {
         buf.write("<table border=1 style=\"empty-cells:show\">");
         buf.newLine();
 
-        boolean hasColumnTags = false;
-        if (tags != null && tags.containsKey(Direction.COLUMN)) {
-            hasColumnTags = true;
-        }
-        boolean hasRowTags = false;
-        if (tags != null && tags.containsKey(Direction.ROW)) {
-            hasRowTags = true;
-        }
-
         //.... Column tags
         buf.write("<tr>");
         buf.newLine();
@@ -1997,60 +2711,38 @@ public class Table {
         for (int c = col0; c <= colEnd; c++) {
             buf.write("<td bgcolor=lightblue>");
             buf.newLine();
-            if (hasColumnTags) {
-                if (tags.get(Direction.COLUMN).containsKey(c)) {
-                    for (String tagName : tags.get(Direction.COLUMN).get(c).keySet()) {
-                        String tagValue = tags.get(Direction.COLUMN).get(c).get(tagName);
-                        if (tagValue.equals(TAG_EMPTY_VALUE)) {
-                            buf.write(tagName + "<br>");
-                            buf.newLine();
-                        } else {
-                            buf.write("TAG: " + tagName + " = " + tagValue + "<br>");
-                            buf.newLine();
-                        }
-                    }
-                }
-            }
+            writeTags(getTags(Direction.COLUMN, c), buf);
         }
 
         //.... The actual table
-        for (int r = 0; r < rowNumber; r++) {
+        CellCursor cursor = cursor();
+        while (cursor.nextRow()) {
+            int r = cursor.getRow() - row0;
 
             buf.write("<tr>");
             buf.newLine();
             buf.write("<td bgcolor=lightblue>");
             buf.newLine();
 
-            if (hasRowTags) {
-                if (tags.get(Direction.ROW).containsKey(r + row0)) {
-                    for (String tagName : tags.get(Direction.ROW).get(r + row0).keySet()) {
-                        String tagValue = tags.get(Direction.ROW).get(r + row0).get(tagName);
-                        if (tagValue.equals(TAG_EMPTY_VALUE)) {
-                            buf.write(tagName + "<br>");
-                            buf.newLine();
-                        } else {
-                            buf.write("TAG: " + tagName + " = " + tagValue + "<br>");
-                            buf.newLine();
-                        }
-                    }
-                }
-            }
+            writeTags(getTags(Direction.ROW, r + row0), buf);
 
-            for (int c = 0; c < colNumber; c++) {
-                if (def[r][c]) {
-                    buf.write("<td> (" + r + "/" + c + ")<br>" + def[r][c]);
+            while (cursor.next()) {
+                int c = cursor.getCol() - col0;
+                if (cursor.isDefaultCell()) {
+                    buf.write("<td> (" + r + "/" + c + ")<br>" + cursor.isDefaultCell());
                     buf.newLine();
                 } else {
                     String color = "yellow";
-                    if (visible[r][c]) {
+                    if (cursor.isVisible()) {
                         color = "green";
                     }
+                    Cell cell = cursor.getCell();
                     buf.write("<td bgcolor=" + color + "> (" + r + "/" + c + ")<br> Cell content: </br>");
-                    for (String cKey : cells[r][c].getContents().keySet()) {
-                        buf.write("<br>" + cKey + ": " + cells[r][c].getContent(cKey) + "</br>");
+                    for (String cKey : cell.getContents().keySet()) {
+                        buf.write("<br>" + cKey + ": " + cell.getContent(cKey) + "</br>");
                     }
-                    buf.write("<br>" + cells[r][c].getContent() + "</br>");
-                    buf.write("Default: " + def[r][c]);
+                    buf.write("<br>" + cell.getContent() + "</br>");
+                    buf.write("Default: " + cursor.isDefaultCell());
                     buf.newLine();
                 }
             }
@@ -2065,6 +2757,27 @@ public class Table {
 
     }
 
+    /**
+     * @param indexTags
+     * @param buf
+     * @throws IOException
+     */
+    private void writeTags(Map<String, String> indexTags, BufferedWriter buf) throws IOException {
+        if (indexTags == null) {
+            return;
+        }
+        for (String tagName : indexTags.keySet()) {
+            String tagValue = indexTags.get(tagName);
+            if (tagValue.equals(TAG_EMPTY_VALUE)) {
+                buf.write(tagName + "<br>");
+                buf.newLine();
+            } else {
+                buf.write("TAG: " + tagName + " = " + tagValue + "<br>");
+                buf.newLine();
+            }
+        }
+    }
+
     /**
      * Get the logical index of the last row in the table.
      *
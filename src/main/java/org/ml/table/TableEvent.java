@@ -0,0 +1,180 @@
+package org.ml.table;
+
+/**
+ * A change of a table. One event describes one operation, such as setting a
+ * cell or adding rows, and not the individual slots affected by it. Within a
+ * batch (see {@link Table#batch(Runnable)}), consecutive events of the same
+ * type are merged if their regions together form a rectangle, i.e. if one
+ * contains the other or they share a full edge. Rows and columns are only
+ * merged if they have been added at the same edge. The region is then the
+ * bounding box of the regions of the merged events, and the counts are
+ * added.
+ *
+ * @author mlaux
+ */
+public final class TableEvent {
+
+    /**
+     * The kind of change
+     */
+    public enum Type {
+
+        /**
+         * Cells have been set, the count is the number of cells
+         */
+        CELLS_SET,
+        /**
+         * Cells have been removed, the count is the number of cells
+         */
+        CELLS_CLEARED,
+        /**
+         * The content, style or hints of cells have changed, or formulas have
+         * been recomputed. The count is the number of cells.
+         */
+        CELLS_CHANGED,
+        /**
+         * Rows have been added at the top or at the bottom, the count is the
+         * number of rows
+         */
+        ROWS_ADDED,
+        /**
+         * Columns have been added at the left or at the right, the count is
+         * the number of columns
+         */
+        COLUMNS_ADDED,
+        /**
+         * Empty rows or columns have been removed and cells may have moved.
+         * The region is the whole table, the count is the number of rows and
+         * columns removed.
+         */
+        COMPACTED,
+        /**
+         * Empty slots have been coalesced into cells. The region is the whole
+         * table, the count is the number of cells created.
+         */
+        COALESCED
+    }
+
+    private final Table table;
+    private final Type type;
+    private final int rowFrom;
+    private final int colFrom;
+    private final int rowEnd;
+    private final int colEnd;
+    private final int count;
+
+    /**
+     * @param table
+     * @param type
+     * @param rowFrom The logical index of the first row affected
+     * @param colFrom The logical index of the first column affected
+     * @param rowEnd The logical index of the last row affected
+     * @param colEnd The logical index of the last column affected
+     * @param count
+     */
+    TableEvent(Table table, Type type, int rowFrom, int colFrom, int rowEnd, int colEnd, int count) {
+        this.table = table;
+        this.type = type;
+        this.rowFrom = rowFrom;
+        this.colFrom = colFrom;
+        this.rowEnd = rowEnd;
+        this.colEnd = colEnd;
+        this.count = count;
+    }
+
+    /**
+     * @param other The event following this event
+     * @return True if both events can be described by one event without
+     * including slots affected by neither
+     */
+    boolean canMerge(TableEvent other) {
+        if (type != other.type) {
+            return false;
+        }
+        switch (type) {
+            case ROWS_ADDED:
+                //.... The rows must extend the same block of new rows
+                return colFrom == other.colFrom && colEnd == other.colEnd
+                        && (other.rowEnd + 1 == rowFrom || rowEnd + 1 == other.rowFrom);
+            case COLUMNS_ADDED:
+                return rowFrom == other.rowFrom && rowEnd == other.rowEnd
+                        && (other.colEnd + 1 == colFrom || colEnd + 1 == other.colFrom);
+            case COMPACTED:
+            case COALESCED:
+                //.... Both cover the whole table
+                return true;
+            default:
+                //.... One region contains the other, or both share a full edge
+                return contains(other) || other.contains(this)
+                        || (rowFrom == other.rowFrom && rowEnd == other.rowEnd && other.colFrom <= colEnd + 1 && colFrom <= other.colEnd + 1)
+                        || (colFrom == other.colFrom && colEnd == other.colEnd && other.rowFrom <= rowEnd + 1 && rowFrom <= other.rowEnd + 1);
+        }
+    }
+
+    private boolean contains(TableEvent other) {
+        return rowFrom <= other.rowFrom && other.rowEnd <= rowEnd && colFrom <= other.colFrom && other.colEnd <= colEnd;
+    }
+
+    /**
+     * @param other An event which can be merged with this event
+     * @return An event covering both events
+     */
+    TableEvent merge(TableEvent other) {
+        return new TableEvent(table, type, Math.min(rowFrom, other.rowFrom), Math.min(colFrom, other.colFrom),
+                Math.max(rowEnd, other.rowEnd), Math.max(colEnd, other.colEnd), count + other.count);
+    }
+
+    /**
+     * @return The table which has changed
+     */
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * @return
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The logical index of the first row affected
+     */
+    public int getRowFrom() {
+        return rowFrom;
+    }
+
+    /**
+     * @return The logical index of the first column affected
+     */
+    public int getColFrom() {
+        return colFrom;
+    }
+
+    /**
+     * @return The logical index of the last row affected
+     */
+    public int getRowEnd() {
+        return rowEnd;
+    }
+
+    /**
+     * @return The logical index of the last column affected
+     */
+    public int getColEnd() {
+        return colEnd;
+    }
+
+    /**
+     * @return The number of cells, rows or columns, depending on the type
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return type + " (" + rowFrom + "/" + colFrom + ") - (" + rowEnd + "/" + colEnd + ") x " + count;
+    }
+}
@@ -0,0 +1,16 @@
+package org.ml.table;
+
+/**
+ * Receives the changes of a table, see
+ * {@link Table#addTableListener(TableListener)}
+ *
+ * @author mlaux
+ */
+@FunctionalInterface
+public interface TableListener {
+
+    /**
+     * @param event
+     */
+    void tableChanged(TableEvent event);
+}
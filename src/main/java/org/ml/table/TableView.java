@@ -0,0 +1,199 @@
+package org.ml.table;
+
+import org.ml.table.render.IRenderer;
+import org.ml.table.render.RenderingContext;
+
+/**
+ * The base for read-only tables presenting the storage of another table
+ * differently. Views do not copy the cells; subclasses map the slot accessors
+ * to the underlying table, and everything else is derived from them.
+ * Renderers are those of the underlying table; views combining several tables
+ * have renderers and tags of their own. Changes of the underlying tables are
+ * visible through the view as long as their dimensions do not change.
+ *
+ * @author mlaux
+ */
+abstract class TableView extends Table {
+
+    private static final String READ_ONLY = "Table views are read-only";
+    final Table base;
+
+    /**
+     * @param base The underlying table, or <code>null</code> if the view
+     * combines several tables
+     * @param row0
+     * @param col0
+     * @param rowNumber
+     * @param colNumber
+     */
+    TableView(Table base, int row0, int col0, int rowNumber, int colNumber) {
+        super(row0, col0, rowNumber, colNumber, false);
+        this.base = base;
+    }
+
+    @Override
+    abstract Cell cellAt(int r, int c);
+
+    @Override
+    abstract boolean visibleAt(int r, int c);
+
+    @Override
+    abstract boolean defaultAt(int r, int c);
+
+    @Override
+    RowData loadRow(int r, RowData data) {
+        int colNumber = getColNumber();
+        data.buffers(colNumber);
+        for (int c = 0; c < colNumber; c++) {
+            data.visible[c] = visibleAt(r, c);
+            data.def[c] = defaultAt(r, c);
+            data.cells[c] = cellAt(r, c);
+        }
+        return data;
+    }
+
+    @Override
+    public boolean isRowBoundary(int row) {
+        int r = row - getRow0();
+
+        if (r > getRowNumber() || r < 0) {
+            throw new IllegalArgumentException("row must be between " + getRow0() + " and " + (getRowEnd() + 1));
+        }
+        if (r == 0 || r == getRowNumber()) {
+            return true;
+        }
+        for (int c = 0; c < getColNumber(); c++) {
+            if (!visibleAt(r, c) && !defaultAt(r, c) && SpanCell.source(cellAt(r, c)) == SpanCell.source(cellAt(r - 1, c))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int r = 0; r < getRowNumber(); r++) {
+            for (int c = 0; c < getColNumber(); c++) {
+                if (!defaultAt(r, c)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Formulas refer to the underlying table, so views show their values only
+     */
+    @Override
+    public Formula getFormula(int row, int col) {
+        return null;
+    }
+
+    @Override
+    public IRenderer getRenderer(RenderingContext renderingContext) {
+        return base == null ? super.getRenderer(renderingContext) : base.getRenderer(renderingContext);
+    }
+
+    @Override
+    public boolean hasRenderer(RenderingContext renderingContext) {
+        return base == null ? super.hasRenderer(renderingContext) : base.hasRenderer(renderingContext);
+    }
+
+    //.... Views are read-only, except for renderers and tags of views combining several tables
+    @Override
+    public void addRenderer(RenderingContext renderingContext, IRenderer renderer) {
+        if (base != null) {
+            throw new UnsupportedOperationException(READ_ONLY);
+        }
+        super.addRenderer(renderingContext, renderer);
+    }
+
+    @Override
+    public void addTag(Direction tagLocation, int logicalIndex, String tagName, String tagValue) {
+        if (base != null) {
+            throw new UnsupportedOperationException(READ_ONLY);
+        }
+        super.addTag(tagLocation, logicalIndex, tagName, tagValue);
+    }
+
+    @Override
+    public boolean coalesce(InternalLocation internalLocation) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void addColumns(ColumnLocation location, int count) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void addRows(RowLocation location, int count) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public boolean compact(ColumnLocation columnLocation) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public boolean compact(RowLocation rowLocation) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public boolean compact(InternalLocation internalLocation) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void setClipping() {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void setGrow() {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void setFixed() {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void setBoundaryCondition(IBoundaryLocation boundaryLocation, BoundaryCondition boundaryCondition) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void setChangeTracking(boolean changeTracking) {
+        throw new UnsupportedOperationException("Changes are tracked by the underlying tables");
+    }
+
+    @Override
+    public void addTableListener(TableListener listener) {
+        throw new UnsupportedOperationException("Listeners are registered with the underlying tables");
+    }
+
+    @Override
+    public SetResult setCell(Cell cell, int row, int col) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public Cell clearCell(int row, int col) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public CheckResult canSetCell(Cell cell, int row, int col) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void addTable(Table table, int row0, int col0) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+}
@@ -0,0 +1,49 @@
+package org.ml.table;
+
+import java.util.Map;
+
+/**
+ * A table with rows and columns swapped, see {@link Table#transposedView()}.
+ * Row r and column c of the view are column r and row c of the underlying
+ * table. Spans and tags are swapped accordingly.
+ *
+ * @author mlaux
+ */
+class TransposedTableView extends TableView {
+
+    /**
+     * @param base
+     */
+    TransposedTableView(Table base) {
+        super(base, base.getCol0(), base.getRow0(), base.getColNumber(), base.getRowNumber());
+    }
+
+    @Override
+    Cell cellAt(int r, int c) {
+        Cell cell = base.cellAt(c, r);
+        if (base.defaultAt(c, r) || !base.visibleAt(c, r) || cell.getRowSpan() == cell.getColSpan()) {
+            return cell;
+        }
+        return new SpanCell(cell, cell.getColSpan(), cell.getRowSpan());
+    }
+
+    @Override
+    boolean visibleAt(int r, int c) {
+        return base.visibleAt(c, r);
+    }
+
+    @Override
+    boolean defaultAt(int r, int c) {
+        return base.defaultAt(c, r);
+    }
+
+    @Override
+    Map<String, String> getTags(Direction tagLocation, int logicalIndex) {
+        return base.getTags(tagLocation == Direction.ROW ? Direction.COLUMN : Direction.ROW, logicalIndex);
+    }
+
+    @Override
+    public Table transposedView() {
+        return base;
+    }
+}
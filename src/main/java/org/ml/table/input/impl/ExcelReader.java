@@ -0,0 +1,621 @@
+package org.ml.table.input.impl;
+
+import java.io.File;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.ml.table.Cell;
+import org.ml.table.ColumnLocation;
+import org.ml.table.RowLocation;
+import org.ml.table.Table;
+import org.ml.tools.logging.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A reader for XLSX workbooks which creates one {@link Table} per sheet. The
+ * sheet XML is parsed with SAX so that only the table being built is held in
+ * memory, never a DOM representation of the sheet.
+ * <p>
+ * Excel row and column indices are used as logical indices in the table, i.
+ * e. a workbook written with {@link org.ml.table.output.impl.ExcelWriter} is
+ * read back into the same layout. Merged regions become cells spanning the
+ * corresponding rows and columns. Numeric values are mapped to
+ * <code>Integer</code> when they are integral and fit, else to
+ * <code>Double</code>; date formatted numbers become
+ * <code>LocalDate</code> or <code>LocalDateTime</code>; booleans become
+ * <code>Boolean</code>; everything else becomes a <code>String</code>.
+ *
+ * @author mlaux
+ */
+public class ExcelReader {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ExcelReader.class.getName());
+    private static final int INITIAL_SIZE = 16;
+    private int rowFrom = 0;
+    private int rowTo = Integer.MAX_VALUE;
+    private int colFrom = 0;
+    private int colTo = Integer.MAX_VALUE;
+
+    /**
+     *
+     */
+    public ExcelReader() {
+
+    }
+
+    /**
+     * Restrict reading to the given range of rows. Cells spanning across the
+     * range boundaries are clipped.
+     *
+     * @param rowFrom The first row to read (0-based, inclusive)
+     * @param rowTo The last row to read (0-based, inclusive)
+     * @return
+     */
+    public ExcelReader setRowRange(int rowFrom, int rowTo) {
+        if (rowFrom < 0) {
+            throw new IllegalArgumentException("rowFrom may not be negative");
+        }
+        if (rowTo < rowFrom) {
+            throw new IllegalArgumentException("rowTo may not be smaller than rowFrom");
+        }
+        this.rowFrom = rowFrom;
+        this.rowTo = rowTo;
+        return this;
+    }
+
+    /**
+     * Restrict reading to the given range of columns. Cells spanning across
+     * the range boundaries are clipped.
+     *
+     * @param colFrom The first column to read (0-based, inclusive)
+     * @param colTo The last column to read (0-based, inclusive)
+     * @return
+     */
+    public ExcelReader setColumnRange(int colFrom, int colTo) {
+        if (colFrom < 0) {
+            throw new IllegalArgumentException("colFrom may not be negative");
+        }
+        if (colTo < colFrom) {
+            throw new IllegalArgumentException("colTo may not be smaller than colFrom");
+        }
+        this.colFrom = colFrom;
+        this.colTo = colTo;
+        return this;
+    }
+
+    /**
+     * Read all sheets of a workbook
+     *
+     * @param fileName
+     * @return The tables keyed by sheet name, in the order of the sheets in the
+     * workbook
+     * @throws Exception
+     */
+    public Map<String, Table> read(String fileName) throws Exception {
+        Map<String, Table> tables = new LinkedHashMap<>();
+        read(fileName, tables::put);
+        return tables;
+    }
+
+    /**
+     * Read a single sheet of a workbook
+     *
+     * @param fileName
+     * @param sheetName
+     * @return The table for the sheet, or <code>null</code> if there is no such
+     * sheet in the workbook
+     * @throws Exception
+     */
+    public Table read(String fileName, String sheetName) throws Exception {
+        if (fileName == null) {
+            throw new NullPointerException("fileName may not be null");
+        }
+        if (sheetName == null) {
+            throw new NullPointerException("sheetName may not be null");
+        }
+        try (OPCPackage opcPackage = OPCPackage.open(new File(fileName), PackageAccess.READ)) {
+            return read(opcPackage, sheetName, null);
+        }
+    }
+
+    /**
+     * Read the sheets of a workbook one after the other. Each table is handed
+     * to the consumer as soon as its sheet has been read, so that only one
+     * table needs to be held in memory at any time.
+     *
+     * @param fileName
+     * @param consumer Receives the sheet name and the table for each sheet
+     * @throws Exception
+     */
+    public void read(String fileName, BiConsumer<String, Table> consumer) throws Exception {
+        if (fileName == null) {
+            throw new NullPointerException("fileName may not be null");
+        }
+        if (consumer == null) {
+            throw new NullPointerException("consumer may not be null");
+        }
+        LOGGER.log(Level.INFO, "Reading input file {0}", fileName);
+        try (OPCPackage opcPackage = OPCPackage.open(new File(fileName), PackageAccess.READ)) {
+            read(opcPackage, null, consumer);
+        }
+    }
+
+    /**
+     * Read the sheets of a workbook from a stream one after the other. Note
+     * that the package needs to be buffered completely, for large workbooks
+     * {@link #read(String, BiConsumer)} is preferable.
+     *
+     * @param stream
+     * @param consumer Receives the sheet name and the table for each sheet
+     * @throws Exception
+     */
+    public void read(InputStream stream, BiConsumer<String, Table> consumer) throws Exception {
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        if (consumer == null) {
+            throw new NullPointerException("consumer may not be null");
+        }
+        try (OPCPackage opcPackage = OPCPackage.open(stream)) {
+            read(opcPackage, null, consumer);
+        }
+    }
+
+    /**
+     * Generic helper. Either reads the sheet with the given name and returns
+     * the table, or reads all sheets and hands them to the consumer.
+     *
+     * @param opcPackage
+     * @param sheetName
+     * @param consumer
+     * @return
+     * @throws Exception
+     */
+    private Table read(OPCPackage opcPackage, String sheetName, BiConsumer<String, Table> consumer) throws Exception {
+        XSSFReader reader = new XSSFReader(opcPackage);
+        ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage, false);
+        StylesTable styles = reader.getStylesTable();
+        boolean date1904 = isDate1904(reader);
+
+        XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (iterator.hasNext()) {
+            iterator.next().close();
+            String name = iterator.getSheetName();
+            if (sheetName != null && !sheetName.equals(name)) {
+                continue;
+            }
+
+            LOGGER.log(Level.INFO, "Reading sheet ''{0}''", name);
+            Table table = readSheet(iterator.getSheetPart(), sharedStrings, styles, date1904);
+            if (consumer != null) {
+                consumer.accept(name, table);
+            } else {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read one sheet. The sheet part is parsed twice: the first pass only
+     * collects the dimension and the merged regions (which are stored after
+     * the cell data in the sheet XML), the second one creates the cells.
+     *
+     * @param part
+     * @param sharedStrings
+     * @param styles
+     * @param date1904
+     * @return
+     * @throws Exception
+     */
+    private Table readSheet(PackagePart part, ReadOnlySharedStringsTable sharedStrings, StylesTable styles,
+            boolean date1904) throws Exception {
+
+        //.... First pass: dimension and merged regions
+        MergeHandler mergeHandler = new MergeHandler();
+        try (InputStream stream = part.getInputStream()) {
+            newParser().parse(stream, mergeHandler);
+        }
+
+        //.... Second pass: the actual cells
+        SheetHandler sheetHandler = new SheetHandler(mergeHandler, sharedStrings, styles, date1904);
+        try (InputStream stream = part.getInputStream()) {
+            newParser().parse(stream, sheetHandler);
+        }
+
+        return sheetHandler.finish();
+    }
+
+    /**
+     *
+     * @param reader
+     * @return
+     * @throws Exception
+     */
+    private boolean isDate1904(XSSFReader reader) throws Exception {
+        boolean[] date1904 = new boolean[1];
+        try (InputStream stream = reader.getWorkbookData()) {
+            newParser().parse(stream, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("workbookPr".equals(localName)) {
+                        String value = attributes.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equals(value);
+                    }
+                }
+            });
+        }
+        return date1904[0];
+    }
+
+    /**
+     *
+     * @return
+     * @throws Exception
+     */
+    private static SAXParser newParser() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        return factory.newSAXParser();
+    }
+
+    /**
+     * Convert a cell reference like "AB12" into a 0-based row and column
+     * index
+     *
+     * @param reference
+     * @param index Receives the row index at position 0 and the column index at
+     * position 1
+     */
+    private static void parseReference(String reference, int[] index) {
+        int col = 0;
+        int row = 0;
+        int i = 0;
+        int length = reference.length();
+        while (i < length) {
+            char ch = reference.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                col = col * 26 + (ch - 'A' + 1);
+            } else if (ch >= 'a' && ch <= 'z') {
+                col = col * 26 + (ch - 'a' + 1);
+            } else if (ch != '$') {
+                break;
+            }
+            i++;
+        }
+        while (i < length) {
+            char ch = reference.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                row = row * 10 + (ch - '0');
+            }
+            i++;
+        }
+        index[0] = row - 1;
+        index[1] = col - 1;
+    }
+
+    /**
+     * Collects the dimension and the merged regions of a sheet
+     */
+    private class MergeHandler extends DefaultHandler {
+
+        private final int[] index = new int[2];
+        private int dimensionRowEnd = -1;
+        private int dimensionColEnd = -1;
+        private final List<int[]> regions = new ArrayList<>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("dimension".equals(localName)) {
+                String ref = attributes.getValue("ref");
+                if (ref != null) {
+                    parseReference(ref.substring(ref.indexOf(':') + 1), index);
+                    dimensionRowEnd = index[0];
+                    dimensionColEnd = index[1];
+                }
+            } else if ("mergeCell".equals(localName)) {
+                String ref = attributes.getValue("ref");
+                int separator = ref == null ? -1 : ref.indexOf(':');
+                if (separator > 0) {
+                    int[] region = new int[4];
+                    parseReference(ref.substring(0, separator), index);
+                    region[0] = index[0];
+                    region[1] = index[1];
+                    parseReference(ref.substring(separator + 1), index);
+                    region[2] = index[0];
+                    region[3] = index[1];
+
+                    //.... Only regions overlapping the requested range are of interest
+                    if (region[2] >= rowFrom && region[0] <= rowTo && region[3] >= colFrom && region[1] <= colTo) {
+                        regions.add(region);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the cells of a sheet and adds them to the table
+     */
+    private class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final StylesTable styles;
+        private final boolean date1904;
+        private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+        private final Map<Long, int[]> anchors = new HashMap<>();          // Clipped merged regions keyed by their original top left corner
+        private final Map<Integer, List<int[]>> coveredRows = new HashMap<>();
+        private final List<int[]> regions;
+        private final int[] index = new int[2];
+        private final StringBuilder text = new StringBuilder(64);
+        private Table table;
+        private boolean grown = false;
+        private int currentRow = -1;
+        private int currentCol = -1;
+        private String type;
+        private int style;
+        private boolean inValue = false;
+        private boolean inInlineString = false;
+        private boolean hasValue = false;
+
+        /**
+         *
+         * @param mergeHandler
+         * @param sharedStrings
+         * @param styles
+         * @param date1904
+         */
+        SheetHandler(MergeHandler mergeHandler, ReadOnlySharedStringsTable sharedStrings, StylesTable styles, boolean date1904) {
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.date1904 = date1904;
+            this.regions = mergeHandler.regions;
+
+            for (int[] region : regions) {
+                int[] clipped = new int[]{
+                    Math.max(region[0], rowFrom), Math.max(region[1], colFrom),
+                    Math.min(region[2], rowTo), Math.min(region[3], colTo)};
+                anchors.put(key(region[0], region[1]), clipped);
+                for (int r = clipped[0]; r <= clipped[2]; r++) {
+                    coveredRows.computeIfAbsent(r, k -> new ArrayList<>(2)).add(clipped);
+                }
+            }
+
+            //.... Size the table from the dimension if available so that it only needs to grow in exceptional cases
+            int rowEnd = Math.min(rowTo, mergeHandler.dimensionRowEnd >= rowFrom ? mergeHandler.dimensionRowEnd : rowFrom + INITIAL_SIZE - 1);
+            int colEnd = Math.min(colTo, mergeHandler.dimensionColEnd >= colFrom ? mergeHandler.dimensionColEnd : colFrom + INITIAL_SIZE - 1);
+            table = new Table(rowFrom, colFrom, rowEnd - rowFrom + 1, colEnd - colFrom + 1);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String rowRef = attributes.getValue("r");
+                    currentRow = rowRef != null ? Integer.parseInt(rowRef) - 1 : currentRow + 1;
+                    currentCol = -1;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    if (ref != null) {
+                        parseReference(ref, index);
+                        currentCol = index[1];
+                    } else {
+                        currentCol++;
+                    }
+                    type = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    style = s != null ? Integer.parseInt(s) : 0;
+                    text.setLength(0);
+                    hasValue = false;
+                    break;
+                case "v":
+                    inValue = true;
+                    hasValue = true;
+                    break;
+                case "is":
+                    inInlineString = true;
+                    hasValue = true;
+                    break;
+                case "t":
+                    if (inInlineString) {
+                        inValue = true;
+                    }
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "c":
+                    addCell();
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                text.append(ch, start, length);
+            }
+        }
+
+        /**
+         * Add the cell which has just been parsed to the table
+         */
+        private void addCell() {
+            if (currentRow < rowFrom || currentRow > rowTo || currentCol < colFrom || currentCol > colTo) {
+                return;
+            }
+
+            int[] span = anchors.remove(key(currentRow, currentCol));
+            if (span == null) {
+                if (isCovered(currentRow, currentCol) || !hasValue) {
+                    return;
+                }
+                span = new int[]{currentRow, currentCol, currentRow, currentCol};
+            }
+
+            Cell cell = new Cell(span[2] - span[0] + 1, span[3] - span[1] + 1);
+            if (hasValue) {
+                Object value = getValue();
+                if (value != null) {
+                    cell.setContent(value);
+                }
+            }
+            setCell(cell, span);
+        }
+
+        /**
+         * Add the cells for merged regions whose top left corner lies outside
+         * of the requested range and trim the table if it had to grow
+         *
+         * @return
+         */
+        Table finish() {
+            for (int[] span : anchors.values()) {
+                setCell(new Cell(span[2] - span[0] + 1, span[3] - span[1] + 1), span);
+            }
+            anchors.clear();
+
+            if (grown && !table.isEmpty()) {
+                table.compact(RowLocation.BOTTOM);
+                table.compact(ColumnLocation.RIGHT);
+            }
+            return table;
+        }
+
+        /**
+         * Grow the table when needed. Growth doubles the size so that the
+         * number of copies of the table data stays logarithmic.
+         *
+         * @param cell
+         * @param span
+         */
+        private void setCell(Cell cell, int[] span) {
+            if (span[2] > table.getRowEnd()) {
+                int count = Math.max(span[2] - table.getRowEnd(), table.getRowNumber());
+                table.addRows(RowLocation.BOTTOM, (int) Math.min(count, (long) rowTo - table.getRowEnd()));
+                grown = true;
+            }
+            if (span[3] > table.getColEnd()) {
+                int count = Math.max(span[3] - table.getColEnd(), table.getColNumber());
+                table.addColumns(ColumnLocation.RIGHT, (int) Math.min(count, (long) colTo - table.getColEnd()));
+                grown = true;
+            }
+            table.setCell(cell, span[0], span[1]);
+        }
+
+        /**
+         * Check whether the location is hidden by a merged region
+         *
+         * @param row
+         * @param col
+         * @return
+         */
+        private boolean isCovered(int row, int col) {
+            List<int[]> covering = coveredRows.get(row);
+            if (covering != null) {
+                for (int[] region : covering) {
+                    if (col >= region[1] && col <= region[3]) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Convert the raw value of the current cell according to its type
+         *
+         * @return
+         */
+        private Object getValue() {
+            String value = text.toString();
+            if (type == null || "n".equals(type)) {
+                if (value.isEmpty()) {
+                    return null;
+                }
+                double number = Double.parseDouble(value);
+                if (isDateStyle(style) && DateUtil.isValidExcelDate(number)) {
+                    LocalDateTime dateTime = DateUtil.getLocalDateTime(number, date1904);
+                    if (dateTime.toLocalTime().toNanoOfDay() == 0) {
+                        return dateTime.toLocalDate();
+                    }
+                    return dateTime;
+                }
+                if (number == Math.rint(number) && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                    return (int) number;
+                }
+                return number;
+            }
+            switch (type) {
+                case "s":
+                    return sharedStrings.getItemAt(Integer.parseInt(value)).getString();
+                case "b":
+                    return "1".equals(value) || "true".equals(value);
+                default:
+                    return value;
+            }
+        }
+
+        /**
+         *
+         * @param styleIndex
+         * @return
+         */
+        private boolean isDateStyle(int styleIndex) {
+            if (styles == null) {
+                return false;
+            }
+            Boolean date = dateStyles.get(styleIndex);
+            if (date == null) {
+                XSSFCellStyle cellStyle = styleIndex < styles.getNumCellStyles() ? styles.getStyleAt(styleIndex) : null;
+                date = cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+                dateStyles.put(styleIndex, date);
+            }
+            return date;
+        }
+
+        /**
+         *
+         * @param row
+         * @param col
+         * @return
+         */
+        private long key(int row, int col) {
+            return ((long) row << 32) | (col & 0xffffffffL);
+        }
+    }
+}
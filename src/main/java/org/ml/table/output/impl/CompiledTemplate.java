@@ -0,0 +1,719 @@
+package org.ml.table.output.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A template created by {@link TemplateCompiler}. The template is a tree of
+ * nodes which write text and evaluate references directly. Variables are
+ * resolved to slots at compile time, and methods are looked up once per
+ * receiver class and then invoked directly. Instances are immutable apart from
+ * these lookup caches and can be shared between threads.
+ *
+ * @author mlaux
+ */
+public class CompiledTemplate {
+
+    private final Node root;
+    private final String[] slotNames;
+
+    /**
+     * @param root
+     * @param slotNames The variable names in slot order
+     */
+    CompiledTemplate(Node root, String[] slotNames) {
+        this.root = root;
+        this.slotNames = slotNames;
+    }
+
+    /**
+     * Render the template with the given variables
+     *
+     * @param context The variables available to the template
+     * @param writer
+     * @throws IOException
+     */
+    public void merge(Map<String, Object> context, Writer writer) throws IOException {
+        if (context == null) {
+            throw new NullPointerException("context may not be null");
+        }
+        if (writer == null) {
+            throw new NullPointerException("writer may not be null");
+        }
+        Object[] scope = new Object[slotNames.length];
+        for (int i = 0; i < slotNames.length; i++) {
+            scope[i] = context.get(slotNames[i]);
+        }
+        root.render(scope, writer);
+    }
+
+    /**
+     * A part of the template producing output
+     */
+    interface Node {
+
+        void render(Object[] scope, Writer writer) throws IOException;
+    }
+
+    /**
+     * An expression evaluated against the variables
+     */
+    interface Expression {
+
+        Object evaluate(Object[] scope);
+    }
+
+    /**
+     * A sequence of nodes
+     */
+    static class BlockNode implements Node {
+
+        private final Node[] nodes;
+
+        BlockNode(List<Node> nodes) {
+            this.nodes = nodes.toArray(new Node[nodes.size()]);
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) throws IOException {
+            for (Node node : nodes) {
+                node.render(scope, writer);
+            }
+        }
+    }
+
+    /**
+     * Literal text
+     */
+    static class TextNode implements Node {
+
+        private final String text;
+
+        TextNode(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) throws IOException {
+            writer.write(text);
+        }
+    }
+
+    /**
+     * A reference like $a, $!a or $a.b.c(d) written to the output. Like in
+     * Velocity, a reference evaluating to null is written as it appears in the
+     * template unless it is quiet.
+     */
+    static class ReferenceNode implements Node {
+
+        private final Expression expression;
+        private final String source;
+        private final boolean quiet;
+
+        ReferenceNode(Expression expression, String source, boolean quiet) {
+            this.expression = expression;
+            this.source = source;
+            this.quiet = quiet;
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) throws IOException {
+            Object value = expression.evaluate(scope);
+            String text = value != null ? value.toString() : null;
+            if (text != null) {
+                writer.write(text);
+            } else if (!quiet) {
+                writer.write(source);
+            }
+        }
+    }
+
+    /**
+     * #if / #elseif / #else
+     */
+    static class IfNode implements Node {
+
+        private final Expression[] conditions;
+        private final Node[] branches;
+        private final Node otherwise;
+
+        IfNode(List<Expression> conditions, List<Node> branches, Node otherwise) {
+            this.conditions = conditions.toArray(new Expression[conditions.size()]);
+            this.branches = branches.toArray(new Node[branches.size()]);
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) throws IOException {
+            for (int i = 0; i < conditions.length; i++) {
+                if (isTrue(conditions[i].evaluate(scope))) {
+                    branches[i].render(scope, writer);
+                    return;
+                }
+            }
+            if (otherwise != null) {
+                otherwise.render(scope, writer);
+            }
+        }
+    }
+
+    /**
+     * #foreach over a range, a collection, an iterator, a map or an array. The
+     * previous value of the loop variable is restored afterwards.
+     */
+    static class ForeachNode implements Node {
+
+        private final int slot;
+        private final Expression items;
+        private final Node body;
+
+        ForeachNode(int slot, Expression items, Node body) {
+            this.slot = slot;
+            this.items = items;
+            this.body = body;
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) throws IOException {
+            Object value = items.evaluate(scope);
+            Object saved = scope[slot];
+            try {
+                if (value instanceof Range) {
+                    Range range = (Range) value;
+                    int step = range.from <= range.to ? 1 : -1;
+                    for (int i = range.from;; i += step) {
+                        scope[slot] = i;
+                        body.render(scope, writer);
+                        if (i == range.to) {
+                            break;
+                        }
+                    }
+                } else {
+                    Iterator<?> iterator = iterator(value);
+                    while (iterator.hasNext()) {
+                        scope[slot] = iterator.next();
+                        body.render(scope, writer);
+                    }
+                }
+            } finally {
+                scope[slot] = saved;
+            }
+        }
+
+        /**
+         *
+         * @param value
+         * @return
+         */
+        private static Iterator<?> iterator(Object value) {
+            if (value instanceof Iterable) {
+                return ((Iterable<?>) value).iterator();
+            } else if (value instanceof Iterator) {
+                return (Iterator<?>) value;
+            } else if (value instanceof Map) {
+                return ((Map<?, ?>) value).values().iterator();
+            } else if (value != null && value.getClass().isArray()) {
+                List<Object> elements = new ArrayList<>();
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    elements.add(Array.get(value, i));
+                }
+                return elements.iterator();
+            }
+            return Collections.emptyIterator();
+        }
+    }
+
+    /**
+     * #set
+     */
+    static class SetNode implements Node {
+
+        private final int slot;
+        private final Expression value;
+
+        SetNode(int slot, Expression value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) {
+            scope[slot] = value.evaluate(scope);
+        }
+    }
+
+    /**
+     * #include of a resource which is written without being parsed. Loaded
+     * resources are kept for subsequent merges.
+     */
+    static class IncludeNode implements Node {
+
+        private final Expression name;
+        private final Function<String, String> loader;
+        private final Map<String, String> contents = new ConcurrentHashMap<>();
+
+        IncludeNode(Expression name, Function<String, String> loader) {
+            this.name = name;
+            this.loader = loader;
+        }
+
+        @Override
+        public void render(Object[] scope, Writer writer) throws IOException {
+            Object value = name.evaluate(scope);
+            if (value == null) {
+                return;
+            }
+            String content = contents.computeIfAbsent(value.toString(), loader);
+            if (content == null) {
+                throw new IllegalArgumentException("Resource " + value + " for #include not found");
+            }
+            writer.write(content);
+        }
+    }
+
+    /**
+     * An inclusive integer range [a..b]
+     */
+    static class Range {
+
+        private final int from;
+        private final int to;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * [$a..$b]
+     */
+    static class RangeExpression implements Expression {
+
+        private final Expression from;
+        private final Expression to;
+
+        RangeExpression(Expression from, Expression to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            Object start = from.evaluate(scope);
+            Object end = to.evaluate(scope);
+            if (start == null || end == null) {
+                return null;
+            }
+            return new Range(toInt(start), toInt(end));
+        }
+
+        /**
+         *
+         * @param value
+         * @return
+         */
+        private static int toInt(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+            return Integer.parseInt(value.toString().trim());
+        }
+    }
+
+    /**
+     * A literal value
+     */
+    static class ConstantExpression implements Expression {
+
+        private final Object value;
+
+        ConstantExpression(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            return value;
+        }
+    }
+
+    /**
+     * $a
+     */
+    static class VariableExpression implements Expression {
+
+        private final int slot;
+
+        VariableExpression(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            return scope[slot];
+        }
+    }
+
+    /**
+     * The method found for a receiver class
+     */
+    private static class Binding {
+
+        private final Class<?> type;
+        private final Method method;
+        private final boolean mapGet;
+
+        Binding(Class<?> type, Method method, boolean mapGet) {
+            this.type = type;
+            this.method = method;
+            this.mapGet = mapGet;
+        }
+    }
+
+    /**
+     * $a.b, resolved to getB(), isB(), a map lookup or get("b")
+     */
+    static class PropertyExpression implements Expression {
+
+        private final Expression target;
+        private final String name;
+        private final String getter;
+        private final String booleanGetter;
+        private volatile Binding binding;
+
+        PropertyExpression(Expression target, String name) {
+            this.target = target;
+            this.name = name;
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            getter = "get" + capitalized;
+            booleanGetter = "is" + capitalized;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            Object object = target.evaluate(scope);
+            if (object == null) {
+                return null;
+            }
+            Binding current = binding;
+            if (current == null || current.type != object.getClass()) {
+                current = bind(object.getClass());
+                binding = current;
+            }
+            if (current.mapGet) {
+                return ((Map<?, ?>) object).get(name);
+            }
+            if (current.method == null) {
+                return null;
+            }
+            if (current.method.getParameterCount() == 1) {
+                return invoke(current.method, object, name);
+            }
+            return invoke(current.method, object);
+        }
+
+        /**
+         *
+         * @param type
+         * @return
+         */
+        private Binding bind(Class<?> type) {
+            //.... Same order as in Velocity
+            Method method = findMethod(type, getter, new Object[0]);
+            if (method == null && Map.class.isAssignableFrom(type)) {
+                return new Binding(type, null, true);
+            }
+            if (method == null) {
+                method = findMethod(type, "get", new Object[]{name});
+            }
+            if (method == null) {
+                method = findMethod(type, booleanGetter, new Object[0]);
+                if (method != null && method.getReturnType() != boolean.class && method.getReturnType() != Boolean.class) {
+                    method = null;
+                }
+            }
+            return new Binding(type, method, false);
+        }
+    }
+
+    /**
+     * $a.b(c, d)
+     */
+    static class MethodExpression implements Expression {
+
+        private final Expression target;
+        private final String name;
+        private final Expression[] arguments;
+        private volatile Binding binding;
+
+        MethodExpression(Expression target, String name, List<Expression> arguments) {
+            this.target = target;
+            this.name = name;
+            this.arguments = arguments.toArray(new Expression[arguments.size()]);
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            Object object = target.evaluate(scope);
+            if (object == null) {
+                return null;
+            }
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = arguments[i].evaluate(scope);
+            }
+            Binding current = binding;
+            if (current == null || current.type != object.getClass() || !accepts(current.method, values)) {
+                current = new Binding(object.getClass(), findMethod(object.getClass(), name, values), false);
+                binding = current;
+            }
+            if (current.method == null) {
+                return null;
+            }
+            return invoke(current.method, object, values);
+        }
+    }
+
+    /**
+     * !a
+     */
+    static class NotExpression implements Expression {
+
+        private final Expression operand;
+
+        NotExpression(Expression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            return !isTrue(operand.evaluate(scope));
+        }
+    }
+
+    /**
+     * a &amp;&amp; b, a || b
+     */
+    static class LogicalExpression implements Expression {
+
+        private final Expression left;
+        private final Expression right;
+        private final boolean and;
+
+        LogicalExpression(Expression left, Expression right, boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            boolean value = isTrue(left.evaluate(scope));
+            if (and ? !value : value) {
+                return value;
+            }
+            return isTrue(right.evaluate(scope));
+        }
+    }
+
+    /**
+     * a == b, a != b. Numbers are compared by value, other objects with equals
+     * or, if their classes differ, by their string representation.
+     */
+    static class EqualityExpression implements Expression {
+
+        private final Expression left;
+        private final Expression right;
+        private final boolean equal;
+
+        EqualityExpression(Expression left, Expression right, boolean equal) {
+            this.left = left;
+            this.right = right;
+            this.equal = equal;
+        }
+
+        @Override
+        public Object evaluate(Object[] scope) {
+            Object a = left.evaluate(scope);
+            Object b = right.evaluate(scope);
+            boolean result;
+            if (a instanceof Number && b instanceof Number) {
+                try {
+                    result = new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+                } catch (NumberFormatException ex) {
+                    //.... NaN or infinite
+                    result = ((Number) a).doubleValue() == ((Number) b).doubleValue();
+                }
+            } else if (a == null || b == null || a.getClass() == b.getClass()) {
+                result = Objects.equals(a, b);
+            } else {
+                result = a.toString().equals(b.toString());
+            }
+            return result == equal;
+        }
+    }
+
+    /**
+     * The truth value of a condition as in Velocity: null, false, empty
+     * strings, collections, maps and arrays, and zero are false
+     *
+     * @param value
+     * @return
+     */
+    static boolean isTrue(Object value) {
+        if (value == null) {
+            return false;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() > 0;
+        } else if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        } else if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        } else if (value.getClass().isArray()) {
+            return Array.getLength(value) > 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0.0;
+        }
+        String text = value.toString();
+        return text != null && !text.isEmpty();
+    }
+
+    /**
+     * Find a public method which accepts the arguments, declared in a public
+     * class or interface so it can be invoked
+     *
+     * @param type
+     * @param name
+     * @param arguments
+     * @return The method or <code>null</code> if there is none
+     */
+    static Method findMethod(Class<?> type, String name, Object[] arguments) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && accepts(method, arguments)) {
+                return accessible(type, method);
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param type
+     * @param method
+     * @return
+     */
+    private static Method accessible(Class<?> type, Method method) {
+        if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return method;
+        }
+        Deque<Class<?>> types = new ArrayDeque<>();
+        types.add(type);
+        while (!types.isEmpty()) {
+            Class<?> current = types.poll();
+            if (Modifier.isPublic(current.getModifiers())) {
+                try {
+                    return current.getMethod(method.getName(), method.getParameterTypes());
+                } catch (NoSuchMethodException ex) {
+                    //.... Look further up
+                }
+            }
+            if (current.getSuperclass() != null) {
+                types.add(current.getSuperclass());
+            }
+            types.addAll(Arrays.asList(current.getInterfaces()));
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param method
+     * @param arguments
+     * @return
+     */
+    private static boolean accepts(Method method, Object[] arguments) {
+        if (method == null) {
+            return true;
+        }
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length != arguments.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (!accepts(types[i], arguments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param type
+     * @param argument
+     * @return
+     */
+    private static boolean accepts(Class<?> type, Object argument) {
+        if (argument == null) {
+            return !type.isPrimitive();
+        }
+        if (!type.isPrimitive()) {
+            return type.isInstance(argument);
+        }
+        if (type == boolean.class) {
+            return argument instanceof Boolean;
+        } else if (type == char.class) {
+            return argument instanceof Character;
+        } else if (type == int.class) {
+            return argument instanceof Integer || argument instanceof Short || argument instanceof Byte;
+        } else if (type == long.class) {
+            return argument instanceof Long || argument instanceof Integer || argument instanceof Short || argument instanceof Byte;
+        } else if (type == double.class || type == float.class) {
+            return argument instanceof Number && !(type == float.class && argument instanceof Double);
+        } else if (type == short.class) {
+            return argument instanceof Short || argument instanceof Byte;
+        } else {
+            return argument instanceof Byte;
+        }
+    }
+
+    /**
+     *
+     * @param method
+     * @param object
+     * @param arguments
+     * @return
+     */
+    private static Object invoke(Method method, Object object, Object... arguments) {
+        try {
+            return method.invoke(object, arguments);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Invocation of " + method.getName() + " failed", ex.getCause());
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Method " + method.getName() + " is not accessible", ex);
+        }
+    }
+}
@@ -1,17 +1,43 @@
 package org.ml.table.output.impl;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.ml.table.CellCursor;
+import org.ml.table.Formula;
 import org.ml.table.Table;
 import org.ml.table.render.IExcelRenderer;
 import org.ml.table.render.RenderingContext;
@@ -29,8 +55,17 @@ public class ExcelWriter {
     private final static Logger LOGGER = LoggerFactory.getLogger(ExcelWriter.class.getName());
     private final FileType excelFileType = FileType.XLSX;
     private final String sheetName = "Data";
+    private static final int ROW_ACCESS_WINDOW = 100;
+    private static final int MAX_COLUMN_WIDTH = 255;       // In characters, the Excel limit
+    private static final int COLUMN_WIDTH_PADDING = 2;
+    private static final int DATE_WIDTH = 10;
+    private static final int BOOLEAN_WIDTH = 5;
+    private static final int GENERAL_NUMBER_WIDTH = 11;   // Excel shows at most 11 characters for numbers in the General format
     private Map<Enum, CellStyle> styleMap;
     private Workbook workbook;
+    private int parallelism = 1;
+    private boolean estimateColumnWidths = false;
+    private boolean writeFormulas = false;
 
     /**
      *
@@ -52,6 +87,55 @@ public class ExcelWriter {
         this.styleMap = styleMap;
     }
 
+    /**
+     * Set the number of threads used to populate the sheets when writing
+     * multiple tables with {@link #write(Map, String)}. With a value larger
+     * than 1, the sheets are streamed concurrently into temporary files on a
+     * bounded thread pool and the workbook package is assembled sequentially
+     * afterwards. Renderers attached to the tables must then be thread-safe.
+     *
+     * @param parallelism The maximum number of sheets populated concurrently
+     * @return
+     */
+    public ExcelWriter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be larger than 0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set the column widths from the length of the rendered cell contents. The
+     * maximum number of characters per column is tracked while the sheet is
+     * populated and the widths are set once at the end. This is much cheaper
+     * than {@link Sheet#autoSizeColumn(int)} which lays out every cell using
+     * font metrics. Text in cells spanning several columns is distributed
+     * across these columns if it does not fit into their combined width.
+     *
+     * @param estimateColumnWidths
+     * @return
+     */
+    public ExcelWriter setEstimateColumnWidths(boolean estimateColumnWidths) {
+        this.estimateColumnWidths = estimateColumnWidths;
+        return this;
+    }
+
+    /**
+     * Write the formulas of {@link org.ml.table.FormulaCell} instances as
+     * Excel formulas, so that the sheet recomputes them when it is edited. The
+     * computed values are kept as the cached results. Formulas which can not
+     * be expressed in Excel, and formulas of table views, are written as
+     * values only.
+     *
+     * @param writeFormulas
+     * @return
+     */
+    public ExcelWriter setWriteFormulas(boolean writeFormulas) {
+        this.writeFormulas = writeFormulas;
+        return this;
+    }
+
     /**
      *
      * @param table
@@ -66,11 +150,25 @@ public class ExcelWriter {
             throw new NullPointerException("fileName may not be null");
         }
 
-        IExcelRenderer renderer = null;
-        if (table.getRenderer(RenderingContext.EXCEL) != null) {
-            renderer = (IExcelRenderer) table.getRenderer(RenderingContext.EXCEL);
-        } else {
-            renderer = new SimpleExcelRenderer();
+        //.... The file is replaced only once the workbook has been written completely
+        LOGGER.log(Level.INFO, "Writing output file {0}", fileName);
+        OutputHelper.writeFile(fileName, stream -> write(table, stream));
+    }
+
+    /**
+     * Write a single table to the given stream. The stream is flushed, but not
+     * closed.
+     *
+     * @param table
+     * @param stream
+     * @throws Exception
+     */
+    public void write(Table table, OutputStream stream) throws Exception {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
         }
 
         if (workbook == null) {
@@ -79,50 +177,26 @@ public class ExcelWriter {
         Sheet sheet = workbook.createSheet(sheetName);
 
         //.... Populate the excel sheet
-        for (int r = table.getRow0(); r <= table.getRowEnd(); r++) {
-            Row row = sheet.createRow(r);
-            for (int c = table.getCol0(); c <= table.getColEnd(); c++) {
-
-                Cell cell = row.createCell(c);
-
-                //.... If a logical call spans more than 1 row and/or column, we only show the one that is actually visible and hide the others
-                if (table.isVisible(r, c)) {
-
-                    org.ml.table.Cell dataCell = table.getCell(r, c);
-
-                    if (styleMap != null) {
-                        Enum style = dataCell.getStyle();
-                        if (style != null) {
-                            if (styleMap.containsKey(style)) {
-                                cell.setCellStyle(styleMap.get(style));
-                            }
-                        }
-                    }
-                    renderer.renderCell(cell, dataCell);
-
-                    //.... Add a merged region in Excel
-                    if (dataCell.getRowSpan() > 1 || dataCell.getColSpan() > 1) {
-                        sheet.addMergedRegion(new CellRangeAddress(r, r + dataCell.getRowSpan() - 1, c, c + dataCell.getColSpan() - 1));
-                    }
-                }
-            }
+        for (CellRangeAddress region : populateSheet(sheet, table, getRenderer(table))) {
+            sheet.addMergedRegion(region);
         }
 
-        //.... Check if the base directory exists; create it if not
-        File file = new File(fileName);
-        if (file.getParentFile() != null) {
-            file.getParentFile().mkdirs();
-        }
+        workbook.write(stream);
+        stream.flush();
+    }
 
-        //.... Write the data to the file now
-        try (FileOutputStream stream = new FileOutputStream(file)) {
-            LOGGER.log(Level.INFO, "Writing output file {0}", file);
-            workbook.write(stream);
-            stream.flush();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "{0}:{1}", new Object[]{ex.getClass(), ex.getMessage()});
+    /**
+     * Write a single table to the given channel. The channel is not closed.
+     *
+     * @param table
+     * @param channel
+     * @throws Exception
+     */
+    public void write(Table table, WritableByteChannel channel) throws Exception {
+        if (channel == null) {
+            throw new NullPointerException("channel may not be null");
         }
-
+        write(table, Channels.newOutputStream(channel));
     }
 
     /**
@@ -139,58 +213,570 @@ public class ExcelWriter {
             throw new NullPointerException("fileName may not be null");
         }
 
+        //.... The file is replaced only once the workbook has been written completely
+        LOGGER.log(Level.INFO, "Writing output file {0}", fileName);
+        OutputHelper.writeFile(fileName, stream -> write(tables, stream));
+    }
+
+    /**
+     * Write multiple tables into separate sheets to the given stream. The
+     * stream is flushed, but not closed.
+     *
+     * @param tables The keys are used as sheet names
+     * @param stream
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, OutputStream stream) throws Exception {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+
         if (workbook == null) {
             workbook = ExcelTools.getNewWorkbook(excelFileType);
         }
 
-        IExcelRenderer renderer = null;
+        if (parallelism > 1 && tables.size() > 1) {
+            if (workbook instanceof XSSFWorkbook || workbook instanceof SXSSFWorkbook) {
+                writeParallel(tables, stream);
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Parallel export requires an XSSF workbook, falling back to sequential export");
+        }
 
         for (String tableName : tables.keySet()) {
 
             Table table = tables.get(tableName);
-            if (table.getRenderer(RenderingContext.EXCEL) != null) {
-                renderer = (IExcelRenderer) table.getRenderer(RenderingContext.EXCEL);
-            } else {
-                renderer = new SimpleExcelRenderer();
-            }
-
             Sheet sheet = workbook.createSheet(tableName);
             LOGGER.log(Level.INFO, "Adding sheet name ''{0}''", tableName);
 
             //.... Populate the excel sheet
-            for (int r = table.getRow0(); r <= table.getRowEnd(); r++) {
-                Row row = sheet.createRow(r);
-                for (int c = table.getCol0(); c <= table.getColEnd(); c++) {
-                    Cell cell = row.createCell(c);
-                    org.ml.table.Cell dataCell = table.getCell(r, c);
-                    if (styleMap != null) {
+            for (CellRangeAddress region : populateSheet(sheet, table, getRenderer(table))) {
+                sheet.addMergedRegion(region);
+            }
+        }
+
+        workbook.write(stream);
+        stream.flush();
+    }
+
+    /**
+     * Write multiple tables into separate sheets to the given channel. The
+     * channel is not closed.
+     *
+     * @param tables The keys are used as sheet names
+     * @param channel
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, WritableByteChannel channel) throws Exception {
+        if (channel == null) {
+            throw new NullPointerException("channel may not be null");
+        }
+        write(tables, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Append a table to a sheet of an existing workbook. The rows of the table
+     * are added below the last row of the sheet, which is created if it does
+     * not exist yet. If the file does not exist, a new workbook is written.
+     * <p>
+     * If the sheet exists, the workbook is not loaded: the package parts other
+     * than the sheet and the styles are copied through as compressed zip
+     * entries, and the XML of the sheet is copied as bytes with the new rows
+     * inserted at the end of its sheet data. Copying the sheet is still linear
+     * in its size, but no row or cell objects are created for the existing
+     * rows. Strings of the new rows are written inline rather than into the
+     * shared strings table. If the sheet does not exist yet, or its XML uses a
+     * namespace prefix, the workbook is loaded completely instead.
+     * <p>
+     * The file is replaced only after the complete workbook has been written
+     * successfully. Since the styles in the style map belong to a different
+     * workbook, they are cloned into the target workbook on every call.
+     *
+     * @param table
+     * @param fileName
+     * @param sheetName
+     * @throws Exception
+     */
+    public void append(Table table, String fileName, String sheetName) throws Exception {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (fileName == null) {
+            throw new NullPointerException("fileName may not be null");
+        }
+        if (sheetName == null) {
+            throw new NullPointerException("sheetName may not be null");
+        }
+
+        File file = new File(fileName);
+        LOGGER.log(Level.INFO, "Writing output file {0}", file);
+        OutputHelper.writeFile(fileName, stream -> {
+            if (!file.exists() || !appendToPackage(table, file, sheetName, stream)) {
+                appendToWorkbook(table, file, sheetName, stream);
+            }
+        });
+    }
+
+    /**
+     * Append a table to an existing sheet without loading the workbook
+     *
+     * @param table
+     * @param file
+     * @param sheetName
+     * @param stream
+     * @return <code>false</code> if nothing has been written since the sheet
+     * does not exist or can not be edited without loading the workbook
+     * @throws Exception
+     */
+    private boolean appendToPackage(Table table, File file, String sheetName, OutputStream stream) throws Exception {
+        try (ZipFile zip = new ZipFile(file)) {
+            SheetAppender appender = SheetAppender.open(zip, sheetName);
+            if (appender == null) {
+                return false;
+            }
+            int firstRow = appender.getFirstRow();
+            LOGGER.log(Level.INFO, "Appending to sheet ''{0}'' at row {1}", new Object[]{sheetName, firstRow});
+
+            //.... The rows are rendered into a workbook sharing the styles of the package, with inline strings
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(appender.createStylesWorkbook(), ROW_ACCESS_WINDOW, false, false);
+            try {
+                SXSSFSheet sheet = streamingWorkbook.createSheet(sheetName);
+                ColumnWidths columnWidths = newColumnWidths(table);
+                List<CellRangeAddress> regions = populateSheet(sheet, table, getRenderer(table), cloneStyles(streamingWorkbook),
+                        firstRow - table.getRow0(), columnWidths);
+                ByteArrayOutputStream styles = new ByteArrayOutputStream();
+                streamingWorkbook.getXSSFWorkbook().getStylesSource().writeTo(styles);
+                CellRangeAddress added = new CellRangeAddress(firstRow, firstRow + table.getRowNumber() - 1, table.getCol0(), table.getColEnd());
+                try (InputStream rows = sheet.getWorksheetXMLInputStream()) {
+                    appender.write(stream, rows, styles.toByteArray(), regions,
+                            columnWidths == null ? Collections.emptyMap() : columnWidths.compute(), added);
+                }
+            } finally {
+                streamingWorkbook.dispose();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Append a table to a sheet after loading the workbook. This is used for
+     * new files and new sheets.
+     *
+     * @param table
+     * @param file
+     * @param sheetName
+     * @param stream
+     * @throws Exception
+     */
+    private void appendToWorkbook(Table table, File file, String sheetName, OutputStream stream) throws Exception {
+        XSSFWorkbook baseWorkbook;
+        if (file.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                baseWorkbook = new XSSFWorkbook(in);
+            }
+        } else {
+            baseWorkbook = new XSSFWorkbook();
+        }
+
+        //.... Locate the first free row of the sheet
+        int firstRow = 0;
+        boolean existingSheet = false;
+        XSSFSheet baseSheet = baseWorkbook.getSheet(sheetName);
+        if (baseSheet != null) {
+            existingSheet = true;
+            if (baseSheet.getPhysicalNumberOfRows() > 0) {
+                firstRow = baseSheet.getLastRowNum() + 1;
+            }
+        }
+        LOGGER.log(Level.INFO, "Appending to sheet ''{0}'' at row {1}", new Object[]{sheetName, firstRow});
+
+        SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(baseWorkbook, ROW_ACCESS_WINDOW);
+        try {
+            Sheet sheet = existingSheet ? streamingWorkbook.getSheet(sheetName) : streamingWorkbook.createSheet(sheetName);
+            ColumnWidths columnWidths = newColumnWidths(table);
+            for (CellRangeAddress region : populateSheet(sheet, table, getRenderer(table), cloneStyles(streamingWorkbook),
+                    firstRow - table.getRow0(), columnWidths)) {
+                sheet.addMergedRegion(region);
+            }
+            if (columnWidths != null) {
+                columnWidths.apply(sheet, existingSheet);
+            }
+            streamingWorkbook.write(stream);
+        } finally {
+            streamingWorkbook.dispose();
+        }
+    }
+
+    /**
+     * @param target
+     * @return Copies of the styles in the style map belonging to the target
+     * workbook, or <code>null</code> if there is no style map
+     */
+    private Map<Enum, CellStyle> cloneStyles(Workbook target) {
+        if (styleMap == null) {
+            return null;
+        }
+        Map<Enum, CellStyle> styles = new HashMap<>();
+        for (Enum style : styleMap.keySet()) {
+            CellStyle cellStyle = target.createCellStyle();
+            cellStyle.cloneStyleFrom(styleMap.get(style));
+            styles.put(style, cellStyle);
+        }
+        return styles;
+    }
+
+    /**
+     * Write a single table asynchronously to the given stream. Failures are
+     * reported through the returned future. Note that a writer instance
+     * should not be used for more than one write at the same time.
+     *
+     * @param table
+     * @param stream
+     * @param executor The executor running the write operation
+     * @return A future completing when the table has been written
+     */
+    public CompletableFuture<Void> writeAsync(Table table, OutputStream stream, Executor executor) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        return OutputHelper.runAsync(() -> write(table, stream), executor);
+    }
+
+    /**
+     * Write a single table asynchronously to the given stream using the common
+     * fork/join pool.
+     *
+     * @param table
+     * @param stream
+     * @return A future completing when the table has been written
+     */
+    public CompletableFuture<Void> writeAsync(Table table, OutputStream stream) {
+        return writeAsync(table, stream, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Write multiple tables asynchronously to the given stream. Failures are
+     * reported through the returned future.
+     *
+     * @param tables The keys are used as sheet names
+     * @param stream
+     * @param executor The executor running the write operation
+     * @return A future completing when the tables have been written
+     */
+    public CompletableFuture<Void> writeAsync(Map<String, Table> tables, OutputStream stream, Executor executor) {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        return OutputHelper.runAsync(() -> write(tables, stream), executor);
+    }
+
+    /**
+     * Write multiple tables asynchronously to the given stream using the
+     * common fork/join pool.
+     *
+     * @param tables The keys are used as sheet names
+     * @param stream
+     * @return A future completing when the tables have been written
+     */
+    public CompletableFuture<Void> writeAsync(Map<String, Table> tables, OutputStream stream) {
+        return writeAsync(tables, stream, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Populate the sheets concurrently. Sheet creation is done up front in the
+     * calling thread since it modifies the workbook, afterwards each sheet is
+     * only touched by the thread filling it. The streaming workbook flushes the
+     * rows of each sheet into its own temporary file and the final zip package
+     * is assembled in {@link SXSSFWorkbook#write(java.io.OutputStream)}.
+     *
+     * @param tables
+     * @param stream
+     * @throws Exception
+     */
+    private void writeParallel(Map<String, Table> tables, OutputStream stream) throws Exception {
+        SXSSFWorkbook streamingWorkbook;
+        if (workbook instanceof SXSSFWorkbook) {
+            streamingWorkbook = (SXSSFWorkbook) workbook;
+        } else {
+            streamingWorkbook = new SXSSFWorkbook((XSSFWorkbook) workbook, ROW_ACCESS_WINDOW);
+        }
+
+        Map<Sheet, Table> sheets = new LinkedHashMap<>();
+        for (String tableName : tables.keySet()) {
+            LOGGER.log(Level.INFO, "Adding sheet name ''{0}''", tableName);
+            sheets.put(streamingWorkbook.createSheet(tableName), tables.get(tableName));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sheets.size()));
+        try {
+
+            //.... Populate the excel sheets
+            Map<Sheet, Future<List<CellRangeAddress>>> futures = new LinkedHashMap<>();
+            for (Sheet sheet : sheets.keySet()) {
+                Table table = sheets.get(sheet);
+                futures.put(sheet, executor.submit(() -> populateSheet(sheet, table, getRenderer(table))));
+            }
+
+            //.... Merged regions are added sequentially
+            for (Sheet sheet : futures.keySet()) {
+                List<CellRangeAddress> regions;
+                try {
+                    regions = futures.get(sheet).get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception) {
+                        throw (Exception) ex.getCause();
+                    }
+                    throw ex;
+                }
+                for (CellRangeAddress region : regions) {
+                    sheet.addMergedRegion(region);
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //.... Assemble the package from the temporary sheet files
+        try {
+            streamingWorkbook.write(stream);
+            stream.flush();
+        } finally {
+            if (streamingWorkbook != workbook) {
+                streamingWorkbook.dispose();
+            }
+        }
+
+    }
+
+    /**
+     * Fill a sheet with the data in the table. Merged regions are not added to
+     * the sheet directly but returned so that the caller can decide when to add
+     * them.
+     *
+     * @param sheet
+     * @param table
+     * @param renderer
+     * @return The merged regions for cells spanning more than one row and/or
+     * column
+     */
+    private List<CellRangeAddress> populateSheet(Sheet sheet, Table table, IExcelRenderer renderer) {
+        ColumnWidths columnWidths = newColumnWidths(table);
+        List<CellRangeAddress> regions = populateSheet(sheet, table, renderer, styleMap, 0, columnWidths);
+        if (columnWidths != null) {
+            columnWidths.apply(sheet, false);
+        }
+        return regions;
+    }
+
+    /**
+     * @param table
+     * @return The collector for the column widths, or <code>null</code> if
+     * they are not estimated
+     */
+    private ColumnWidths newColumnWidths(Table table) {
+        return estimateColumnWidths ? new ColumnWidths(table.getCol0(), table.getColNumber()) : null;
+    }
+
+    /**
+     * Fill a sheet with the data in the table starting at an offset. Merged
+     * regions are not added to the sheet directly but returned so that the
+     * caller can decide when to add them.
+     *
+     * @param sheet
+     * @param table
+     * @param renderer
+     * @param styles The styles to use for the sheet, may be <code>null</code>
+     * @param rowOffset The offset added to the logical row indices
+     * @param columnWidths Collects the rendered widths, may be
+     * <code>null</code>
+     * @return The merged regions for cells spanning more than one row and/or
+     * column
+     */
+    private List<CellRangeAddress> populateSheet(Sheet sheet, Table table, IExcelRenderer renderer,
+            Map<Enum, CellStyle> styles, int rowOffset, ColumnWidths columnWidths) {
+        List<CellRangeAddress> regions = new ArrayList<>();
+
+        CellCursor cursor = table.cursor();
+        while (cursor.nextRow()) {
+            int r = cursor.getRow();
+            Row row = sheet.createRow(r + rowOffset);
+            while (cursor.next()) {
+                int c = cursor.getCol();
+
+                Cell cell = row.createCell(c);
+
+                //.... If a logical call spans more than 1 row and/or column, we only show the one that is actually visible and hide the others
+                if (cursor.isVisible()) {
+
+                    org.ml.table.Cell dataCell = cursor.getCell();
+
+                    if (styles != null) {
                         Enum style = dataCell.getStyle();
                         if (style != null) {
-                            if (styleMap.containsKey(style)) {
-                                cell.setCellStyle(styleMap.get(style));
+                            if (styles.containsKey(style)) {
+                                cell.setCellStyle(styles.get(style));
                             }
                         }
                     }
                     renderer.renderCell(cell, dataCell);
+
+                    //.... Measured before a formula is set, as the cell then no longer has a value type
+                    if (columnWidths != null) {
+                        columnWidths.add(c, dataCell.getColSpan(), getRenderedWidth(cell));
+                    }
+
+                    if (writeFormulas) {
+                        Formula formula = table.getFormula(r, c);
+                        String excelFormula = formula == null ? null : formula.toExcel(table, rowOffset);
+                        if (excelFormula != null) {
+                            cell.setCellFormula(excelFormula);
+                        }
+                    }
+
+                    //.... Add a merged region in Excel
+                    if (dataCell.getRowSpan() > 1 || dataCell.getColSpan() > 1) {
+                        regions.add(new CellRangeAddress(r + rowOffset, r + rowOffset + dataCell.getRowSpan() - 1, c, c + dataCell.getColSpan() - 1));
+                    }
                 }
             }
         }
 
-        //.... Check if the base directory exists; create it if not
-        File file = new File(fileName);
-        if (file.getParentFile() != null) {
-            file.getParentFile().mkdirs();
+        return regions;
+    }
+
+    /**
+     * Estimate the number of characters needed to display the cell value
+     *
+     * @param cell
+     * @return
+     */
+    private int getRenderedWidth(Cell cell) {
+        switch (cell.getCellType()) {
+            case STRING:
+                String value = cell.getStringCellValue();
+                int width = 0;
+                int lineStart = 0;
+                int lineEnd;
+                while ((lineEnd = value.indexOf('\n', lineStart)) >= 0) {
+                    width = Math.max(width, lineEnd - lineStart);
+                    lineStart = lineEnd + 1;
+                }
+                return Math.max(width, value.length() - lineStart);
+            case NUMERIC:
+                if (DateUtil.isCellDateFormatted(cell)) {
+                    return DATE_WIDTH;
+                }
+                double number = cell.getNumericCellValue();
+                if (number == Math.rint(number) && Math.abs(number) < 1.0e15) {
+                    return Long.toString((long) number).length();
+                }
+                return Math.min(Double.toString(number).length(), GENERAL_NUMBER_WIDTH);
+            case BOOLEAN:
+                return BOOLEAN_WIDTH;
+            default:
+                return 0;
         }
+    }
 
-        //.... Write the data to the file now
-        try (FileOutputStream stream = new FileOutputStream(file)) {
-            LOGGER.log(Level.INFO, "Writing output file {0}", file);
-            workbook.write(stream);
-            stream.flush();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "{0}:{1}", new Object[]{ex.getClass(), ex.getMessage()});
+    /**
+     * Collects the maximum rendered width per column of a sheet
+     */
+    private static class ColumnWidths {
+
+        private final int col0;
+        private final int[] widths;
+        private final List<int[]> spanned = new ArrayList<>();
+
+        /**
+         *
+         * @param col0 The logical index of the first column
+         * @param colNumber
+         */
+        ColumnWidths(int col0, int colNumber) {
+            this.col0 = col0;
+            this.widths = new int[colNumber];
+        }
+
+        /**
+         *
+         * @param col
+         * @param colSpan
+         * @param width
+         */
+        void add(int col, int colSpan, int width) {
+            if (colSpan == 1) {
+                widths[col - col0] = Math.max(widths[col - col0], width);
+            } else if (width > 0) {
+                spanned.add(new int[]{col - col0, colSpan, width});
+            }
         }
 
+        /**
+         * Spanned cells are only considered once the single column widths are
+         * known: if their text does not fit into the combined width, the
+         * missing width is distributed evenly across the columns
+         *
+         * @return The widths of the columns with content in units of 1/256
+         * character, by column index
+         */
+        Map<Integer, Integer> compute() {
+            for (int[] span : spanned) {
+                int available = 0;
+                for (int c = span[0]; c < span[0] + span[1]; c++) {
+                    available += widths[c];
+                }
+                int missing = span[2] - available;
+                for (int c = span[0]; missing > 0 && c < span[0] + span[1]; c++) {
+                    int share = (missing + span[0] + span[1] - c - 1) / (span[0] + span[1] - c);
+                    widths[c] += share;
+                    missing -= share;
+                }
+            }
+            spanned.clear();
+            Map<Integer, Integer> columnWidths = new TreeMap<>();
+            for (int c = 0; c < widths.length; c++) {
+                if (widths[c] > 0) {
+                    columnWidths.put(c + col0, Math.min(widths[c] + COLUMN_WIDTH_PADDING, MAX_COLUMN_WIDTH) * 256);
+                }
+            }
+            return columnWidths;
+        }
+
+        /**
+         * @param sheet
+         * @param keepWider If <code>true</code>, columns which are already
+         * wider than the estimate are left untouched
+         */
+        void apply(Sheet sheet, boolean keepWider) {
+            for (Map.Entry<Integer, Integer> entry : compute().entrySet()) {
+                if (!keepWider || sheet.getColumnWidth(entry.getKey()) < entry.getValue()) {
+                    sheet.setColumnWidth(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param table
+     * @return
+     */
+    private IExcelRenderer getRenderer(Table table) {
+        if (table.getRenderer(RenderingContext.EXCEL) != null) {
+            return (IExcelRenderer) table.getRenderer(RenderingContext.EXCEL);
+        } else {
+            return new SimpleExcelRenderer();
+        }
     }
 
 }
@@ -0,0 +1,855 @@
+package org.ml.table.output.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.ml.table.Cell;
+import org.ml.table.CellCursor;
+import org.ml.table.Table;
+import org.ml.table.Table.Direction;
+import org.ml.table.output.impl.VelocityWriter.ContextKey;
+import org.ml.table.output.impl.VelocityWriter.OptionalContextKey;
+import org.ml.table.render.IRenderer;
+import org.ml.table.render.IVelocityRenderer;
+import org.ml.table.render.RenderingContext;
+import org.ml.table.render.RowBands;
+import org.ml.tools.FileType;
+import org.ml.tools.PropertyManager;
+import org.ml.tools.logging.LoggerFactory;
+
+/**
+ * A writer creating the same HTML markup as the default templates used by
+ * {@link VelocityWriter}, but without a template engine. The table is walked
+ * directly and the markup is collected in a buffer which is reused across
+ * writes. The {@link IVelocityRenderer} attached to a table for the
+ * {@link RenderingContext#VELOCITY} context is used to render the cells.
+ * <p>
+ * The supported properties are {@link ContextKey#title},
+ * {@link OptionalContextKey#cssFileReference} and
+ * {@link OptionalContextKey#cssFileInclude}. A CSS file to include is read
+ * from the file system or, if it does not exist there, from the class path.
+ * <p>
+ * Since the buffer is reused, an instance must not be used for more than one
+ * write at the same time.
+ *
+ * @author mlaux
+ */
+public class HtmlWriter {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(HtmlWriter.class.getName());
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private PropertyManager propertyManager = new PropertyManager();
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy | HH:mm");
+    private static final int MIN_BAND_ROWS = 64;
+    private static final int BANDS_PER_THREAD = 4;
+    private final StringBuilder buffer = new StringBuilder(2 * BUFFER_SIZE);
+    private int parallelism = 1;
+    private String headerRowTag = null;
+    private boolean compact = false;
+    private boolean gzip = false;
+
+    /**
+     *
+     */
+    public HtmlWriter() {
+
+    }
+
+    /**
+     * The title and CSS properties are taken from the given properties
+     *
+     * @param propertyManager
+     */
+    public HtmlWriter(PropertyManager propertyManager) {
+        if (propertyManager == null) {
+            throw new NullPointerException("propertyManager may not be null");
+        }
+        this.propertyManager = propertyManager;
+    }
+
+    /**
+     * Set the number of threads used to render a table. With a value larger
+     * than 1, large tables are split into bands of rows which are not cut by
+     * any cell spanning several rows. The bands are rendered concurrently on a
+     * fork/join pool and written in order. Renderers attached to the tables
+     * must then be thread-safe.
+     *
+     * @param parallelism The maximum number of bands rendered concurrently
+     * @return
+     */
+    public HtmlWriter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be larger than 0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * In compact mode, indentation, optional end tags and span attributes
+     * equal to 1 are left out, and consecutive empty slots of a row are
+     * written as a single cell spanning these columns. This typically reduces
+     * the size of the output considerably.
+     *
+     * @param compact
+     * @return
+     */
+    public HtmlWriter setCompact(boolean compact) {
+        this.compact = compact;
+        return this;
+    }
+
+    /**
+     * Compress the output with gzip. This applies to all write methods,
+     * including the pages and the index page written by
+     * {@link #writePages(Table, String, int)}; the file names are not changed.
+     *
+     * @param gzip
+     * @return
+     */
+    public HtmlWriter setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Rows tagged with this name (see {@link Table#hasTag(Direction, int, String)})
+     * are repeated at the top of each page written by
+     * {@link #writePages(Table, String, int)}. Such rows should not be part of
+     * cells spanning into untagged rows.
+     *
+     * @param headerRowTag The tag name or <code>null</code> to repeat no rows
+     * @return
+     */
+    public HtmlWriter setHeaderRowTag(String headerRowTag) {
+        this.headerRowTag = headerRowTag;
+        return this;
+    }
+
+    /**
+     * Write a single table into several HTML pages. The given file is an index
+     * page linking to the pages, which are written into the same directory
+     * with the page number appended to the file name, e.g. table.html,
+     * table-1.html, table-2.html, ... A page break never splits a cell
+     * spanning several rows, so a page may contain less or, if a span is
+     * longer than a page, more rows than requested. Each page is streamed to
+     * its file as soon as it is rendered.
+     *
+     * @param table
+     * @param fileName The name of the index page
+     * @param rowsPerPage The number of rows per page
+     * @throws Exception
+     */
+    public void writePages(Table table, String fileName, int rowsPerPage) throws Exception {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (fileName == null) {
+            throw new NullPointerException("fileName may not be null");
+        }
+        if (rowsPerPage < 1) {
+            throw new IllegalArgumentException("rowsPerPage must be larger than 0");
+        }
+
+        String extension = FileType.HTML.getExtension();
+        String baseName = fileName.endsWith(extension) ? fileName.substring(0, fileName.length() - extension.length()) : fileName;
+        int[] pages = RowBands.split(table, rowsPerPage);
+        int pageNumber = pages.length - 1;
+        String[] pageFileNames = new String[pageNumber];
+        for (int i = 0; i < pageNumber; i++) {
+            pageFileNames[i] = baseName + "-" + (i + 1) + extension;
+        }
+
+        //.... The rows repeated on each page
+        List<Integer> headerRows = new ArrayList<>();
+        if (headerRowTag != null) {
+            for (int r = table.getRow0(); r <= table.getRowEnd(); r++) {
+                if (table.hasTag(Direction.ROW, r, headerRowTag)) {
+                    headerRows.add(r);
+                }
+            }
+        }
+
+        String title = getTitle();
+        String indexName = new File(fileName).getName();
+        IVelocityRenderer renderer = getRenderer(table);
+
+        for (int i = 0; i < pageNumber; i++) {
+            int page = i;
+            LOGGER.log(Level.INFO, "Writing output file {0}", pageFileNames[page]);
+            OutputHelper.writeFile(pageFileNames[page], stream -> {
+                OutputStream out = compress(stream);
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                buffer.setLength(0);
+
+                writeHeader(title != null ? title + " (" + (page + 1) + "/" + pageNumber + ")" : null);
+                appendNavigation(indexName, pageFileNames, page);
+                buffer.append("<table border=\"1\">\n");
+                for (int headerRow : headerRows) {
+                    if (headerRow < pages[page]) {
+                        appendRows(table, renderer, headerRow, headerRow + 1, buffer);
+                    }
+                }
+                writeRows(table, renderer, pages[page], pages[page + 1], writer);
+                buffer.append("</table>\n");
+                appendNavigation(indexName, pageFileNames, page);
+                writeFooter();
+
+                finish(writer, out);
+            });
+        }
+
+        //.... The index page
+        LOGGER.log(Level.INFO, "Writing output file {0}", fileName);
+        OutputHelper.writeFile(fileName, stream -> {
+            OutputStream out = compress(stream);
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            buffer.setLength(0);
+
+            writeHeader(title);
+            buffer.append("<ul>\n");
+            for (int i = 0; i < pageNumber; i++) {
+                buffer.append("<li><a href=\"").append(new File(pageFileNames[i]).getName()).append("\">Rows ")
+                        .append(pages[i]).append(" - ").append(pages[i + 1] - 1).append("</a></li>\n");
+            }
+            buffer.append("</ul>\n");
+            writeFooter();
+
+            finish(writer, out);
+        });
+    }
+
+    /**
+     * Write a single table
+     *
+     * @param table
+     * @param fileName
+     * @throws Exception
+     */
+    public void write(Table table, String fileName) throws Exception {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        write(null, table, fileName);
+    }
+
+    /**
+     * Write a single table to the given stream using UTF-8. The stream is
+     * flushed, but not closed.
+     *
+     * @param table
+     * @param stream
+     * @throws Exception
+     */
+    public void write(Table table, OutputStream stream) throws Exception {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        write(null, table, stream);
+    }
+
+    /**
+     * Write a single table to the given channel using UTF-8. The channel is not
+     * closed.
+     *
+     * @param table
+     * @param channel
+     * @throws Exception
+     */
+    public void write(Table table, WritableByteChannel channel) throws Exception {
+        if (channel == null) {
+            throw new NullPointerException("channel may not be null");
+        }
+        write(table, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Write multiple tables into a single file
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param fileName
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, String fileName) throws Exception {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        write(tables, null, fileName);
+    }
+
+    /**
+     * Write multiple tables to the given stream using UTF-8. The stream is
+     * flushed, but not closed.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param stream
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, OutputStream stream) throws Exception {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        write(tables, null, stream);
+    }
+
+    /**
+     * Write multiple tables to the given channel using UTF-8. The channel is
+     * not closed.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param channel
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, WritableByteChannel channel) throws Exception {
+        if (channel == null) {
+            throw new NullPointerException("channel may not be null");
+        }
+        write(tables, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Write a single table asynchronously to the given stream. Failures are
+     * reported through the returned future.
+     *
+     * @param table
+     * @param stream
+     * @param executor The executor running the write operation
+     * @return A future completing when the table has been written
+     */
+    public CompletableFuture<Void> writeAsync(Table table, OutputStream stream, Executor executor) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        return OutputHelper.runAsync(() -> write(null, table, stream), executor);
+    }
+
+    /**
+     * Write a single table asynchronously to the given stream using the common
+     * fork/join pool.
+     *
+     * @param table
+     * @param stream
+     * @return A future completing when the table has been written
+     */
+    public CompletableFuture<Void> writeAsync(Table table, OutputStream stream) {
+        return writeAsync(table, stream, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Write multiple tables asynchronously to the given stream. Failures are
+     * reported through the returned future.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param stream
+     * @param executor The executor running the write operation
+     * @return A future completing when the tables have been written
+     */
+    public CompletableFuture<Void> writeAsync(Map<String, Table> tables, OutputStream stream, Executor executor) {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        return OutputHelper.runAsync(() -> write(tables, null, stream), executor);
+    }
+
+    /**
+     * Write multiple tables asynchronously to the given stream using the
+     * common fork/join pool.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param stream
+     * @return A future completing when the tables have been written
+     */
+    public CompletableFuture<Void> writeAsync(Map<String, Table> tables, OutputStream stream) {
+        return writeAsync(tables, stream, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generic helper
+     *
+     * @param tables
+     * @param table
+     * @param fileName
+     * @throws Exception
+     */
+    private void write(Map<String, Table> tables, Table table, String fileName) throws Exception {
+        if (fileName == null) {
+            throw new NullPointerException("fileName may not be null");
+        }
+
+        checkTables(tables, table);
+
+        LOGGER.log(Level.INFO, "Writing output file {0}", fileName);
+        OutputHelper.writeFile(fileName, stream -> write(tables, table, stream));
+    }
+
+    /**
+     * Generic helper
+     *
+     * @param tables
+     * @param table
+     * @param stream
+     * @throws Exception
+     */
+    private void write(Map<String, Table> tables, Table table, OutputStream stream) throws Exception {
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        checkTables(tables, table);
+
+        OutputStream out = compress(stream);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        buffer.setLength(0);
+
+        writeHeader(getTitle());
+
+        if (table != null) {
+            writeTable(table, writer, out);
+        } else {
+            buffer.append("<ul>\n");
+            for (String tableKey : tables.keySet()) {
+                buffer.append("<li><a href=\"#").append(tableKey).append("\">").append(tableKey).append("</a></li>\n");
+            }
+            buffer.append("</ul>\n");
+
+            for (String tableKey : tables.keySet()) {
+                buffer.append("\n<h3 id=\"").append(tableKey).append("\"> ").append(tableKey).append(" </h3>\n\n");
+                writeTable(tables.get(tableKey), writer, out);
+            }
+        }
+
+        writeFooter();
+
+        finish(writer, out);
+    }
+
+    /**
+     * Wrap the stream for compression if this is enabled
+     *
+     * @param stream
+     * @return
+     * @throws IOException
+     */
+    private OutputStream compress(OutputStream stream) throws IOException {
+        if (gzip) {
+            return new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        return stream;
+    }
+
+    /**
+     * Hand over the rest of the buffer and complete a compressed stream. The
+     * underlying stream is flushed, but not closed.
+     *
+     * @param writer
+     * @param out The stream returned by {@link #compress(OutputStream)}
+     * @throws IOException
+     */
+    private void finish(Writer writer, OutputStream out) throws IOException {
+        writer.append(buffer);
+        writer.flush();
+        buffer.setLength(0);
+        if (gzip) {
+            ((GZIPOutputStream) out).finish();
+            out.flush();
+        }
+    }
+
+    /**
+     * The HTML header and the title
+     *
+     * @param title The title or <code>null</code> if there is none
+     * @throws IOException
+     */
+    private void writeHeader(String title) throws IOException {
+        buffer.append("<html>\n\n<head>\n");
+        if (propertyManager.containsProperty(OptionalContextKey.cssFileReference)) {
+            buffer.append("<link rel=\"stylesheet\" href=\"").append(propertyManager.getProperty(OptionalContextKey.cssFileReference)).append("\">\n");
+        }
+        if (propertyManager.containsProperty(OptionalContextKey.cssFileInclude)) {
+            buffer.append("<style>\n");
+            appendResource(propertyManager.getProperty(OptionalContextKey.cssFileInclude));
+            buffer.append("</style>\n");
+        }
+        if (title != null) {
+            buffer.append("<title>").append(title).append("</title>\n");
+        }
+        buffer.append("</head>\n\n<body>\n\n");
+        if (title != null) {
+            buffer.append("<h1>").append(title).append("</h1>\n\n");
+        }
+    }
+
+    /**
+     *
+     * @return The title or <code>null</code> if there is none
+     */
+    private String getTitle() {
+        if (propertyManager.containsProperty(ContextKey.title)) {
+            return propertyManager.getProperty(ContextKey.title);
+        }
+        return null;
+    }
+
+    /**
+     * Links to the index page and the neighbouring pages
+     *
+     * @param indexName
+     * @param pageFileNames
+     * @param page
+     */
+    private void appendNavigation(String indexName, String[] pageFileNames, int page) {
+        buffer.append("<p>");
+        if (page > 0) {
+            buffer.append("<a href=\"").append(new File(pageFileNames[page - 1]).getName()).append("\">&lt;</a> ");
+        }
+        buffer.append("<a href=\"").append(indexName).append("\">").append(page + 1).append(" / ").append(pageFileNames.length).append("</a>");
+        if (page < pageFileNames.length - 1) {
+            buffer.append(" <a href=\"").append(new File(pageFileNames[page + 1]).getName()).append("\">&gt;</a>");
+        }
+        buffer.append("</p>\n");
+    }
+
+    /**
+     * The date and the end of the document
+     */
+    private void writeFooter() {
+        buffer.append("\n<p/>\n<h4>").append(formatter.format(ZonedDateTime.now())).append("</h4>\n\n</body>\n</html>\n");
+    }
+
+    /**
+     * The actual table. Only the visible cells are written, invisible ones are
+     * covered by cells spanning more than one row and/or column.
+     *
+     * @param table
+     * @param writer
+     * @param out The stream the writer writes to
+     * @throws Exception
+     */
+    private void writeTable(Table table, Writer writer, OutputStream out) throws Exception {
+        IVelocityRenderer renderer = getRenderer(table);
+
+        buffer.append("<table border=\"1\">\n");
+        writeTableRows(table, renderer, writer, out);
+        buffer.append("</table>\n");
+    }
+
+    /**
+     * @param tables
+     * @param table
+     */
+    private void checkTables(Map<String, Table> tables, Table table) {
+        if (table != null) {
+            checkTable(table);
+        } else {
+            for (Table tableValue : tables.values()) {
+                checkTable(tableValue);
+            }
+        }
+    }
+
+    /**
+     * Make sure a table can be written, before anything is written
+     *
+     * @param table
+     */
+    void checkTable(Table table) {
+    }
+
+    /**
+     * Write all rows of a table
+     *
+     * @param table
+     * @param renderer
+     * @param writer
+     * @param out The stream the writer writes to. Data may be written to it
+     * directly after the writer has been flushed.
+     * @throws Exception
+     */
+    void writeTableRows(Table table, IVelocityRenderer renderer, Writer writer, OutputStream out) throws Exception {
+        writeRows(table, renderer, table.getRow0(), table.getRowEnd() + 1, writer);
+    }
+
+    /**
+     * Hand over the buffer to the writer
+     *
+     * @param writer
+     * @throws IOException
+     */
+    void flushBuffer(Writer writer) throws IOException {
+        writer.append(buffer);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Write a range of rows, in parallel bands if enabled
+     *
+     * @param table
+     * @param renderer
+     * @param from The first row
+     * @param to The row after the last row
+     * @param writer
+     * @throws Exception
+     */
+    private void writeRows(Table table, IVelocityRenderer renderer, int from, int to, Writer writer) throws Exception {
+        if (parallelism > 1 && to - from >= 2 * MIN_BAND_ROWS) {
+            writeBands(table, renderer, from, to, writer);
+        } else {
+            CellCursor cursor = table.cursor(from, to);
+            while (cursor.nextRow()) {
+                appendRow(cursor, renderer, buffer);
+
+                //.... Hand over to the writer when the buffer is full
+                if (buffer.length() > BUFFER_SIZE) {
+                    writer.append(buffer);
+                    buffer.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Render bands of rows concurrently into separate buffers and hand them
+     * over to the writer in the original order as soon as they are available
+     *
+     * @param table
+     * @param renderer
+     * @param from The first row
+     * @param to The row after the last row
+     * @param writer
+     * @throws Exception
+     */
+    private void writeBands(Table table, IVelocityRenderer renderer, int from, int to, Writer writer) throws Exception {
+        int rowsPerBand = Math.max(MIN_BAND_ROWS, (to - from) / (BANDS_PER_THREAD * parallelism));
+        int[] bands = RowBands.split(table, from, to, rowsPerBand);
+
+        writer.append(buffer);
+        buffer.setLength(0);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<StringBuilder>> futures = new ArrayList<>(bands.length - 1);
+            for (int i = 0; i < bands.length - 1; i++) {
+                int bandFrom = bands[i];
+                int bandTo = bands[i + 1];
+                futures.add(pool.submit(() -> {
+                    StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+                    appendRows(table, renderer, bandFrom, bandTo, sb);
+                    return sb;
+                }));
+            }
+
+            for (Future<StringBuilder> future : futures) {
+                try {
+                    writer.append(future.get());
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception) {
+                        throw (Exception) ex.getCause();
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     *
+     * @param table
+     * @param renderer
+     * @param from The first row
+     * @param to The row after the last row
+     * @param sb
+     * @throws IOException
+     */
+    void appendRows(Table table, IVelocityRenderer renderer, int from, int to, StringBuilder sb) throws IOException {
+        CellCursor cursor = table.cursor(from, to);
+        while (cursor.nextRow()) {
+            appendRow(cursor, renderer, sb);
+        }
+    }
+
+    /**
+     * Append the row the cursor is positioned on
+     *
+     * @param cursor
+     * @param renderer
+     * @param sb
+     * @throws IOException
+     */
+    private void appendRow(CellCursor cursor, IVelocityRenderer renderer, StringBuilder sb) throws IOException {
+        if (compact) {
+            appendCompactRow(cursor, renderer, sb);
+            return;
+        }
+        sb.append("  <tr>\n");
+        while (cursor.nextVisible()) {
+            if (cursor.isDefaultCell()) {
+                sb.append("    <td></td>\n");
+            } else {
+                appendCell(cursor.getCell(), renderer, sb);
+            }
+        }
+        sb.append("  </tr>\n");
+    }
+
+    /**
+     * A row without indentation, optional end tags and span attributes equal
+     * to 1. Consecutive empty slots are merged into one cell spanning several
+     * columns; slots covered by spans from rows above interrupt such a run.
+     *
+     * @param cursor
+     * @param renderer
+     * @param sb
+     * @throws IOException
+     */
+    private void appendCompactRow(CellCursor cursor, IVelocityRenderer renderer, StringBuilder sb) throws IOException {
+        sb.append("<tr>");
+        int empty = 0;
+        while (cursor.next()) {
+            if (cursor.isVisible() && cursor.isDefaultCell()) {
+                empty++;
+                continue;
+            }
+            appendEmptyCells(empty, sb);
+            empty = 0;
+            if (cursor.isVisible()) {
+                Cell cell = cursor.getCell();
+                sb.append("<td");
+                if (cell.getRowSpan() > 1) {
+                    sb.append(" rowspan=").append(cell.getRowSpan());
+                }
+                if (cell.getColSpan() > 1) {
+                    sb.append(" colspan=").append(cell.getColSpan());
+                }
+                appendContent(cell, renderer, sb);
+            }
+        }
+        appendEmptyCells(empty, sb);
+        sb.append('\n');
+    }
+
+    /**
+     *
+     * @param count
+     * @param sb
+     */
+    private static void appendEmptyCells(int count, StringBuilder sb) {
+        if (count == 1) {
+            sb.append("<td>");
+        } else if (count > 1) {
+            sb.append("<td colspan=").append(count).append('>');
+        }
+    }
+
+    /**
+     *
+     * @param cell
+     * @param renderer
+     * @param sb
+     * @throws IOException
+     */
+    private void appendCell(Cell cell, IVelocityRenderer renderer, StringBuilder sb) throws IOException {
+        sb.append("    <td rowspan=").append(cell.getRowSpan()).append(" colspan=").append(cell.getColSpan());
+        appendContent(cell, renderer, sb);
+        sb.append("</td>\n");
+    }
+
+    /**
+     * The style attribute, the end of the start tag and the content
+     *
+     * @param cell
+     * @param renderer
+     * @param sb
+     * @throws IOException
+     */
+    private void appendContent(Cell cell, IVelocityRenderer renderer, StringBuilder sb) throws IOException {
+        if (renderer != null) {
+            String style = renderer.renderCellStyle(cell);
+            if (!style.isEmpty()) {
+                sb.append(' ').append(style);
+            }
+            sb.append('>');
+            renderer.renderCell(cell, sb);
+        } else {
+            if (cell.getStyle() != null) {
+                sb.append(" class=\"").append(cell.getStyle()).append('"');
+            }
+            sb.append('>');
+            Object content = cell.getContent("name");
+            if (content != null) {
+                sb.append(content);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param table
+     * @return The renderer for the table or <code>null</code> if there is none
+     */
+    private IVelocityRenderer getRenderer(Table table) {
+        IRenderer renderer = table.getRenderer(RenderingContext.VELOCITY);
+        if (renderer instanceof IVelocityRenderer) {
+            return (IVelocityRenderer) renderer;
+        }
+        return null;
+    }
+
+    /**
+     * Copy the contents of a file or class path resource into the buffer
+     *
+     * @param name
+     * @throws IOException
+     */
+    private void appendResource(String name) throws IOException {
+        File file = new File(name);
+        InputStream stream;
+        if (file.isFile()) {
+            stream = Files.newInputStream(file.toPath());
+        } else {
+            stream = HtmlWriter.class.getClassLoader().getResourceAsStream(name);
+        }
+        if (stream == null) {
+            LOGGER.log(Level.WARNING, "CSS file {0} not found", name);
+            return;
+        }
+        try (Reader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            char[] chars = new char[4096];
+            int count;
+            while ((count = reader.read(chars)) >= 0) {
+                buffer.append(chars, 0, count);
+            }
+        }
+        buffer.append('\n');
+    }
+}
@@ -0,0 +1,158 @@
+package org.ml.table.output.impl;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.ml.table.Table;
+import org.ml.table.render.IVelocityRenderer;
+import org.ml.table.render.RowBands;
+import org.ml.tools.PropertyManager;
+
+/**
+ * An HTML writer for tables which are written repeatedly while they change.
+ * The rows of a table are split into bands, and the markup of each band is
+ * kept as encoded bytes together with the version of the band (see
+ * {@link Table#getVersion(int, int)}). When the table is written again, only
+ * bands changed since then are rendered, the others are copied from the
+ * cache. Change tracking has to be enabled on the tables written (see
+ * {@link Table#setChangeTracking(boolean)}), so table views can not be written
+ * with this writer.
+ * <p>
+ * The cache only reflects changes of the tables. If renderers or their
+ * configuration are changed, {@link #clear()} has to be called. Bands are
+ * always rendered sequentially.
+ *
+ * @author mlaux
+ */
+public class IncrementalHtmlWriter extends HtmlWriter {
+
+    private static final int DEFAULT_ROWS_PER_BAND = 256;
+    private int rowsPerBand = DEFAULT_ROWS_PER_BAND;
+    private final Map<Table, Map<Integer, Fragment>> caches = new WeakHashMap<>();
+    private long renderedBands = 0;
+    private long reusedBands = 0;
+
+    /**
+     * The markup of a band of rows
+     */
+    private static class Fragment {
+
+        private final int to;
+        private final long version;
+        private final byte[] bytes;
+
+        private Fragment(int to, long version, byte[] bytes) {
+            this.to = to;
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     *
+     */
+    public IncrementalHtmlWriter() {
+
+    }
+
+    /**
+     * The title and CSS properties are taken from the given properties
+     *
+     * @param propertyManager
+     */
+    public IncrementalHtmlWriter(PropertyManager propertyManager) {
+        super(propertyManager);
+    }
+
+    /**
+     * Set the number of rows per band. Bands are extended where cells span
+     * across their edge. Smaller bands mean less rendering per change, but
+     * more bookkeeping per write.
+     *
+     * @param rowsPerBand
+     * @return
+     */
+    public IncrementalHtmlWriter setRowsPerBand(int rowsPerBand) {
+        if (rowsPerBand < 1) {
+            throw new IllegalArgumentException("rowsPerBand must be larger than 0");
+        }
+        this.rowsPerBand = rowsPerBand;
+        clear();
+        return this;
+    }
+
+    @Override
+    public IncrementalHtmlWriter setCompact(boolean compact) {
+        super.setCompact(compact);
+        clear();
+        return this;
+    }
+
+    /**
+     * Discard the cached markup of all tables
+     */
+    public void clear() {
+        caches.clear();
+    }
+
+    /**
+     * @return The number of bands rendered since this writer has been created
+     */
+    public long getRenderedBands() {
+        return renderedBands;
+    }
+
+    /**
+     * @return The number of bands copied from the cache since this writer has
+     * been created
+     */
+    public long getReusedBands() {
+        return reusedBands;
+    }
+
+    /**
+     * @param table
+     * @throws IllegalStateException if change tracking is not enabled for the
+     * table
+     */
+    @Override
+    void checkTable(Table table) {
+        if (!table.isChangeTracking()) {
+            throw new IllegalStateException("Change tracking must be enabled for tables written incrementally");
+        }
+    }
+
+    @Override
+    void writeTableRows(Table table, IVelocityRenderer renderer, Writer writer, OutputStream out) throws Exception {
+        Map<Integer, Fragment> cache = caches.getOrDefault(table, new HashMap<>());
+        Map<Integer, Fragment> fragments = new HashMap<>();
+
+        //.... The fragments are written to the stream directly
+        flushBuffer(writer);
+        writer.flush();
+
+        int[] bands = RowBands.split(table, rowsPerBand);
+        for (int i = 0; i < bands.length - 1; i++) {
+            int from = bands[i];
+            int to = bands[i + 1];
+            long version = table.getVersion(from, to);
+            Fragment fragment = cache.get(from);
+            if (fragment == null || fragment.to != to || fragment.version != version) {
+                StringBuilder sb = new StringBuilder();
+                appendRows(table, renderer, from, to, sb);
+                fragment = new Fragment(to, version, sb.toString().getBytes(StandardCharsets.UTF_8));
+                renderedBands++;
+            } else {
+                reusedBands++;
+            }
+            fragments.put(from, fragment);
+            out.write(fragment.bytes);
+        }
+
+        //.... Bands which no longer exist are dropped
+        caches.put(table, fragments);
+    }
+}
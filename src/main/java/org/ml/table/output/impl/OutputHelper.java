@@ -0,0 +1,138 @@
+package org.ml.table.output.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Helper methods shared by the writers in this package
+ *
+ * @author mlaux
+ */
+final class OutputHelper {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A write operation which may fail with a checked exception
+     */
+    @FunctionalInterface
+    interface WriteTask {
+
+        void run() throws Exception;
+    }
+
+    /**
+     * A write operation producing the content of a file
+     */
+    @FunctionalInterface
+    interface StreamTask {
+
+        void run(OutputStream stream) throws Exception;
+    }
+
+    /**
+     *
+     */
+    private OutputHelper() {
+
+    }
+
+    /**
+     * Write a file through a temporary file in the same directory, which is
+     * moved into place only after the task has completed successfully. An
+     * existing file therefore survives failures of the task, and its
+     * permissions are kept. A new file gets the default permissions. The
+     * parent directory is created if it does not exist yet.
+     *
+     * @param fileName
+     * @param task Writes the content to the stream, which is closed afterwards
+     * @throws Exception
+     */
+    static void writeFile(String fileName, StreamTask task) throws Exception {
+        if (fileName == null) {
+            throw new NullPointerException("fileName may not be null");
+        }
+        if (task == null) {
+            throw new NullPointerException("task may not be null");
+        }
+
+        File file = new File(fileName).getAbsoluteFile();
+        file.getParentFile().mkdirs();
+        Path target = file.toPath();
+        Path temporary = createTemporaryFile(target);
+        try {
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE)) {
+                task.run(stream);
+            }
+            if (Files.exists(target)) {
+                try {
+                    Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException ex) {
+                    //.... Not a POSIX file system
+                }
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Create an empty file next to the target. Unlike temporary files, which
+     * are only accessible by the owner, the file gets the default permissions
+     * of new files.
+     *
+     * @param target
+     * @return
+     * @throws IOException
+     */
+    private static Path createTemporaryFile(Path target) throws IOException {
+        while (true) {
+            Path temporary = target.resolveSibling(target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temporary);
+            } catch (FileAlreadyExistsException ex) {
+                //.... Try another name
+            }
+        }
+    }
+
+    /**
+     * Run a write operation on the given executor. Exceptions thrown by the
+     * task complete the returned future exceptionally.
+     *
+     * @param task
+     * @param executor
+     * @return
+     */
+    static CompletableFuture<Void> runAsync(WriteTask task, Executor executor) {
+        if (task == null) {
+            throw new NullPointerException("task may not be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor may not be null");
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+}
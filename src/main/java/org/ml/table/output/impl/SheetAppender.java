@@ -0,0 +1,648 @@
+package org.ml.table.output.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Appends rows to a worksheet of an existing XLSX package without loading the
+ * workbook. All package parts except the sheet and the styles are copied
+ * through as compressed zip entries. The XML of the sheet is copied as bytes,
+ * with the new rows inserted at the end of the sheet data and the dimension,
+ * the column widths and the merged regions adjusted. The new rows refer to
+ * the styles of the existing workbook, which are provided through
+ * {@link #createStylesWorkbook()}.
+ *
+ * @author mlaux
+ */
+final class SheetAppender {
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String DOCUMENT_RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String OFFICE_DOCUMENT = DOCUMENT_RELATIONSHIPS_NS + "/officeDocument";
+    private static final String WORKSHEET = DOCUMENT_RELATIONSHIPS_NS + "/worksheet";
+    private static final String STYLES = DOCUMENT_RELATIONSHIPS_NS + "/styles";
+    private static final String THEME = DOCUMENT_RELATIONSHIPS_NS + "/theme";
+    private static final Set<String> BEFORE_MERGE_CELLS = new HashSet<>(Arrays.asList("sheetCalcPr", "sheetProtection",
+            "protectedRanges", "scenarios", "autoFilter", "sortState", "dataConsolidate", "customSheetViews"));
+    private static final Pattern ROW_NUMBER = Pattern.compile("(^|\\s)r\\s*=\\s*[\"'](\\d+)[\"']");
+    private static final Pattern DIMENSION = Pattern.compile("<dimension\\s+ref=\"([^\"]*)\"");
+    private static final Pattern COLS = Pattern.compile("<cols\\s*/>|<cols\\s*>(.*?)</cols\\s*>", Pattern.DOTALL);
+    private static final Pattern COL = Pattern.compile("<col\\b([^>]*?)/?>");
+    private static final Pattern ATTRIBUTE = Pattern.compile("([\\w:]+)\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern MERGE_CELLS = Pattern.compile("<mergeCells\\b([^>]*?)(/?)>");
+    private static final Pattern COUNT = Pattern.compile("\\bcount\\s*=\\s*\"(\\d+)\"");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final ZipFile zip;
+    private final ZipArchiveEntry sheetEntry;
+    private final ZipArchiveEntry stylesEntry;
+    private final ZipArchiveEntry themeEntry;
+    private long dataStart;
+    private long dataOpenEnd;
+    private long dataClose;
+    private long dataEnd;
+    private boolean emptyData;
+    private int lastRow = -1;
+
+    /**
+     * @param zip
+     * @param sheetEntry
+     * @param stylesEntry
+     * @param themeEntry May be <code>null</code>
+     */
+    private SheetAppender(ZipFile zip, ZipArchiveEntry sheetEntry, ZipArchiveEntry stylesEntry, ZipArchiveEntry themeEntry) {
+        this.zip = zip;
+        this.sheetEntry = sheetEntry;
+        this.stylesEntry = stylesEntry;
+        this.themeEntry = themeEntry;
+    }
+
+    /**
+     * Locate a sheet in the package and scan its sheet data
+     *
+     * @param zip
+     * @param sheetName
+     * @return The appender, or <code>null</code> if the package does not
+     * contain the sheet or the sheet can not be edited as bytes
+     * @throws Exception
+     */
+    static SheetAppender open(ZipFile zip, String sheetName) throws Exception {
+        if (zip == null) {
+            throw new NullPointerException("zip may not be null");
+        }
+        if (sheetName == null) {
+            throw new NullPointerException("sheetName may not be null");
+        }
+
+        //.... Follow the relationships from the package to the workbook and the sheet
+        String workbookPath = null;
+        for (String[] relationship : relationships(zip, "").values()) {
+            if (OFFICE_DOCUMENT.equals(relationship[0])) {
+                workbookPath = relationship[1];
+            }
+        }
+        Document workbook = workbookPath == null ? null : parse(zip, workbookPath);
+        if (workbook == null) {
+            return null;
+        }
+        Map<String, String[]> workbookRelationships = relationships(zip, workbookPath);
+        String sheetPath = null;
+        NodeList sheets = workbook.getElementsByTagNameNS(MAIN_NS, "sheet");
+        for (int i = 0; i < sheets.getLength(); i++) {
+            Element sheet = (Element) sheets.item(i);
+            String[] relationship = workbookRelationships.get(sheet.getAttributeNS(DOCUMENT_RELATIONSHIPS_NS, "id"));
+            if (sheetName.equals(sheet.getAttribute("name")) && relationship != null && WORKSHEET.equals(relationship[0])) {
+                sheetPath = relationship[1];
+            }
+        }
+        String stylesPath = null;
+        String themePath = null;
+        for (String[] relationship : workbookRelationships.values()) {
+            if (STYLES.equals(relationship[0])) {
+                stylesPath = relationship[1];
+            } else if (THEME.equals(relationship[0])) {
+                themePath = relationship[1];
+            }
+        }
+        if (sheetPath == null || stylesPath == null || zip.getEntry(sheetPath) == null || zip.getEntry(stylesPath) == null) {
+            return null;
+        }
+
+        SheetAppender appender = new SheetAppender(zip, zip.getEntry(sheetPath), zip.getEntry(stylesPath),
+                themePath == null ? null : zip.getEntry(themePath));
+        return appender.scan() ? appender : null;
+    }
+
+    /**
+     * @return The index of the first row after the existing rows of the sheet
+     */
+    int getFirstRow() {
+        return lastRow + 1;
+    }
+
+    /**
+     * Create an empty workbook with the styles and the theme of the package.
+     * Cells rendered in this workbook refer to the same style indices as the
+     * cells of the package.
+     *
+     * @return
+     * @throws IOException
+     */
+    XSSFWorkbook createStylesWorkbook() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            putEntry(out, "[Content_Types].xml", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                    + "<Override PartName=\"/xl/theme/theme1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.theme+xml\"/>"
+                    + "</Types>");
+            putEntry(out, "_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Relationships xmlns=\"" + RELATIONSHIPS_NS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + OFFICE_DOCUMENT + "\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            putEntry(out, "xl/workbook.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + DOCUMENT_RELATIONSHIPS_NS + "\"><sheets/></workbook>");
+            putEntry(out, "xl/_rels/workbook.xml.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Relationships xmlns=\"" + RELATIONSHIPS_NS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + STYLES + "\" Target=\"styles.xml\"/>"
+                    + (themeEntry == null ? "" : "<Relationship Id=\"rId2\" Type=\"" + THEME + "\" Target=\"theme/theme1.xml\"/>")
+                    + "</Relationships>");
+            putEntry(out, "xl/styles.xml", stylesEntry);
+            if (themeEntry != null) {
+                putEntry(out, "xl/theme/theme1.xml", themeEntry);
+            }
+        }
+        return new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Write the package with the new rows
+     *
+     * @param stream
+     * @param rows The XML of the new rows, as written by SXSSF
+     * @param styles The XML of the styles, including styles added for the new
+     * rows
+     * @param regions The merged regions of the new rows
+     * @param columnWidths The estimated widths of the columns of the new rows
+     * in units of 1/256 character, may be empty
+     * @param added The range of the new rows, <code>null</code> if there are
+     * none
+     * @throws IOException
+     */
+    void write(OutputStream stream, InputStream rows, byte[] styles, List<CellRangeAddress> regions,
+            Map<Integer, Integer> columnWidths, CellRangeAddress added) throws IOException {
+        ZipArchiveOutputStream out = new ZipArchiveOutputStream(stream);
+
+        //.... Untouched parts are not even decompressed
+        zip.copyRawEntries(out, entry -> !entry.getName().equals(sheetEntry.getName()) && !entry.getName().equals(stylesEntry.getName()));
+
+        out.putArchiveEntry(new ZipArchiveEntry(stylesEntry.getName()));
+        out.write(styles);
+        out.closeArchiveEntry();
+
+        out.putArchiveEntry(new ZipArchiveEntry(sheetEntry.getName()));
+        try (InputStream in = zip.getInputStream(sheetEntry)) {
+            String head = new String(readBytes(in, dataStart), StandardCharsets.UTF_8);
+            out.write(cols(dimension(head, added), columnWidths).getBytes(StandardCharsets.UTF_8));
+            byte[] open = readBytes(in, dataOpenEnd - dataStart);
+            out.write(emptyData ? "<sheetData>".getBytes(StandardCharsets.UTF_8) : open);
+            copy(in, out, dataClose - dataOpenEnd);
+            copy(rows, out, Long.MAX_VALUE);
+            byte[] close = readBytes(in, dataEnd - dataClose);
+            out.write(emptyData ? "</sheetData>".getBytes(StandardCharsets.UTF_8) : close);
+            String tail = new String(readBytes(in, Long.MAX_VALUE), StandardCharsets.UTF_8);
+            out.write(mergeCells(tail, regions).getBytes(StandardCharsets.UTF_8));
+        }
+        out.closeArchiveEntry();
+        out.finish();
+    }
+
+    /**
+     * Find the sheet data and the last row of the sheet. Only the markup is
+     * looked at, the contents of the cells are skipped.
+     *
+     * @return <code>false</code> if the sheet can not be edited as bytes
+     * @throws IOException
+     */
+    private boolean scan() throws IOException {
+        try (InputStream in = zip.getInputStream(sheetEntry)) {
+            ByteScanner scanner = new ByteScanner(in);
+            boolean root = true;
+            boolean data = false;
+            StringBuilder name = new StringBuilder();
+            StringBuilder attributes = new StringBuilder();
+            int b;
+            while ((b = scanner.read()) >= 0) {
+                if (b != '<') {
+                    continue;
+                }
+                long start = scanner.offset - 1;
+                b = scanner.read();
+                if (b == '?') {
+                    scanner.skipPast("?>");
+                    continue;
+                }
+                if (b == '!') {
+                    b = scanner.read();
+                    scanner.skipPast(b == '-' ? "-->" : b == '[' ? "]]>" : ">");
+                    continue;
+                }
+                boolean closing = b == '/';
+                if (closing) {
+                    b = scanner.read();
+                }
+                name.setLength(0);
+                while (b >= 0 && b != '>' && b != '/' && !Character.isWhitespace(b)) {
+                    name.append((char) b);
+                    b = scanner.read();
+                }
+
+                //.... Read the rest of the tag, keeping the attributes of the tags needed
+                boolean keep = root || (data && "row".equals(name.toString()));
+                attributes.setLength(0);
+                int quote = 0;
+                int previous = 0;
+                while (b >= 0 && (b != '>' || quote != 0)) {
+                    if (quote == 0 && (b == '"' || b == '\'')) {
+                        quote = b;
+                    } else if (b == quote) {
+                        quote = 0;
+                    }
+                    if (keep) {
+                        attributes.append((char) b);
+                    }
+                    if (!Character.isWhitespace(b)) {
+                        previous = b;
+                    }
+                    b = scanner.read();
+                }
+                boolean selfClosing = previous == '/';
+
+                if (closing) {
+                    if (data && "sheetData".equals(name.toString())) {
+                        dataClose = start;
+                        dataEnd = scanner.offset;
+                        return true;
+                    }
+                } else if (root) {
+
+                    //.... The rows written by SXSSF are in the default namespace
+                    if (!"worksheet".equals(name.toString()) || attributes.indexOf("xmlns=\"" + MAIN_NS + "\"") < 0) {
+                        return false;
+                    }
+                    root = false;
+                } else if (!data && "sheetData".equals(name.toString())) {
+                    dataStart = start;
+                    dataOpenEnd = scanner.offset;
+                    if (selfClosing) {
+                        emptyData = true;
+                        dataClose = dataOpenEnd;
+                        dataEnd = dataOpenEnd;
+                        return true;
+                    }
+                    data = true;
+                } else if (keep) {
+                    Matcher matcher = ROW_NUMBER.matcher(attributes);
+                    lastRow = matcher.find() ? Integer.parseInt(matcher.group(2)) - 1 : lastRow + 1;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extend the dimension of the sheet by the new rows
+     *
+     * @param head
+     * @param added
+     * @return
+     */
+    private static String dimension(String head, CellRangeAddress added) {
+        Matcher matcher = DIMENSION.matcher(head);
+        if (added == null || !matcher.find()) {
+            return head;
+        }
+        CellRangeAddress range = CellRangeAddress.valueOf(matcher.group(1));
+        CellRangeAddress union = new CellRangeAddress(Math.min(range.getFirstRow(), added.getFirstRow()), Math.max(range.getLastRow(), added.getLastRow()),
+                Math.min(range.getFirstColumn(), added.getFirstColumn()), Math.max(range.getLastColumn(), added.getLastColumn()));
+        return head.substring(0, matcher.start(1)) + union.formatAsString() + head.substring(matcher.end(1));
+    }
+
+    /**
+     * Widen the columns which are narrower than estimated. Existing column
+     * definitions are split where only some of their columns are widened.
+     *
+     * @param head
+     * @param columnWidths
+     * @return
+     */
+    private static String cols(String head, Map<Integer, Integer> columnWidths) {
+        if (columnWidths.isEmpty()) {
+            return head;
+        }
+
+        Matcher matcher = COLS.matcher(head);
+        boolean found = matcher.find();
+        Map<Integer, Map<String, String>> cols = new TreeMap<>();
+        Set<Integer> covered = new HashSet<>();
+        if (found && matcher.group(1) != null) {
+            Matcher colMatcher = COL.matcher(matcher.group(1));
+            while (colMatcher.find()) {
+                Map<String, String> attributes = new LinkedHashMap<>();
+                Matcher attributeMatcher = ATTRIBUTE.matcher(colMatcher.group(1));
+                while (attributeMatcher.find()) {
+                    attributes.put(attributeMatcher.group(1), attributeMatcher.group(2));
+                }
+                int min = Integer.parseInt(attributes.get("min"));
+                int max = Integer.parseInt(attributes.get("max"));
+                double width = attributes.containsKey("width") ? Double.parseDouble(attributes.get("width")) : 0.0;
+
+                //.... Split the definition where the widened columns change
+                int from = min;
+                Integer current = widened(columnWidths, min, width);
+                for (int col = min + 1; col <= max + 1; col++) {
+                    Integer next = col <= max ? widened(columnWidths, col, width) : null;
+                    if (col > max || !Objects.equals(next, current)) {
+                        Map<String, String> part = new LinkedHashMap<>(attributes);
+                        part.put("min", Integer.toString(from));
+                        part.put("max", Integer.toString(col - 1));
+                        if (current != null) {
+                            part.put("width", Double.toString(current / 256.0));
+                            part.put("customWidth", "1");
+                        }
+                        cols.put(from, part);
+                        from = col;
+                        current = next;
+                    }
+                }
+                for (int col = min; col <= max; col++) {
+                    covered.add(col);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : columnWidths.entrySet()) {
+            int col = entry.getKey() + 1;
+            if (!covered.contains(col)) {
+                Map<String, String> part = new LinkedHashMap<>();
+                part.put("min", Integer.toString(col));
+                part.put("max", Integer.toString(col));
+                part.put("width", Double.toString(entry.getValue() / 256.0));
+                part.put("customWidth", "1");
+                cols.put(col, part);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("<cols>");
+        for (Map<String, String> attributes : cols.values()) {
+            sb.append("<col");
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                sb.append(' ').append(attribute.getKey()).append("=\"").append(attribute.getValue()).append('"');
+            }
+            sb.append("/>");
+        }
+        sb.append("</cols>");
+
+        //.... The column definitions precede the sheet data
+        if (found) {
+            return head.substring(0, matcher.start()) + sb + head.substring(matcher.end());
+        }
+        return head + sb;
+    }
+
+    /**
+     * @param columnWidths
+     * @param col The 1-based column index
+     * @param width The current width in characters
+     * @return The estimated width if it is larger than the current width,
+     * else <code>null</code>
+     */
+    private static Integer widened(Map<Integer, Integer> columnWidths, int col, double width) {
+        Integer estimate = columnWidths.get(col - 1);
+        return estimate != null && width * 256 < estimate ? estimate : null;
+    }
+
+    /**
+     * Add the merged regions of the new rows
+     *
+     * @param tail The markup following the sheet data
+     * @param regions
+     * @return
+     */
+    private static String mergeCells(String tail, List<CellRangeAddress> regions) {
+        if (regions.isEmpty()) {
+            return tail;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (CellRangeAddress region : regions) {
+            sb.append("<mergeCell ref=\"").append(region.formatAsString()).append("\"/>");
+        }
+
+        Matcher matcher = MERGE_CELLS.matcher(tail);
+        if (!matcher.find()) {
+            int position = mergeCellsPosition(tail);
+            return tail.substring(0, position) + "<mergeCells count=\"" + regions.size() + "\">" + sb + "</mergeCells>" + tail.substring(position);
+        }
+
+        String attributes = matcher.group(1);
+        Matcher countMatcher = COUNT.matcher(attributes);
+        if (countMatcher.find()) {
+            int count = Integer.parseInt(countMatcher.group(1)) + regions.size();
+            attributes = attributes.substring(0, countMatcher.start(1)) + count + attributes.substring(countMatcher.end(1));
+        }
+        if (!matcher.group(2).isEmpty()) {
+            return tail.substring(0, matcher.start()) + "<mergeCells" + attributes + ">" + sb + "</mergeCells>" + tail.substring(matcher.end());
+        }
+        int end = tail.indexOf("</mergeCells>", matcher.end());
+        return tail.substring(0, matcher.start()) + "<mergeCells" + attributes + ">" + tail.substring(matcher.end(), end) + sb + tail.substring(end);
+    }
+
+    /**
+     * @param tail The markup following the sheet data
+     * @return The position of the first element which follows the merged
+     * regions in the schema, or of the end of the worksheet
+     */
+    private static int mergeCellsPosition(String tail) {
+        int depth = 0;
+        int i = 0;
+        while ((i = tail.indexOf('<', i)) >= 0) {
+            if (tail.startsWith("<!--", i) || tail.startsWith("<?", i)) {
+                i = tail.indexOf(tail.startsWith("<!--", i) ? "-->" : "?>", i);
+                if (i < 0) {
+                    break;
+                }
+                continue;
+            }
+            boolean closing = tail.startsWith("</", i);
+            int nameEnd = i + (closing ? 2 : 1);
+            while (nameEnd < tail.length() && "/> \t\r\n".indexOf(tail.charAt(nameEnd)) < 0) {
+                nameEnd++;
+            }
+            String name = tail.substring(i + (closing ? 2 : 1), nameEnd);
+            int end = nameEnd;
+            int quote = 0;
+            while (end < tail.length() && (tail.charAt(end) != '>' || quote != 0)) {
+                char c = tail.charAt(end);
+                if (quote == 0 && (c == '"' || c == '\'')) {
+                    quote = c;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                end++;
+            }
+            if (closing) {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            } else {
+                if (depth == 0 && !BEFORE_MERGE_CELLS.contains(name)) {
+                    return i;
+                }
+                if (tail.charAt(end - 1) != '/') {
+                    depth++;
+                }
+            }
+            i = end;
+        }
+        return tail.length();
+    }
+
+    /**
+     * @param zip
+     * @param partPath The path of the part, empty for the package
+     * @return The internal relationships of the part by id, as {type, path}
+     * @throws Exception
+     */
+    private static Map<String, String[]> relationships(ZipFile zip, String partPath) throws Exception {
+        int slash = partPath.lastIndexOf('/');
+        String relsPath = partPath.substring(0, slash + 1) + "_rels/" + partPath.substring(slash + 1) + ".rels";
+        Document rels = parse(zip, relsPath);
+        if (rels == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String[]> relationships = new HashMap<>();
+        NodeList nodes = rels.getElementsByTagNameNS(RELATIONSHIPS_NS, "Relationship");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element relationship = (Element) nodes.item(i);
+            if (!"External".equals(relationship.getAttribute("TargetMode"))) {
+                String target = URI.create("/" + partPath).resolve(relationship.getAttribute("Target")).getPath().substring(1);
+                relationships.put(relationship.getAttribute("Id"), new String[]{relationship.getAttribute("Type"), target});
+            }
+        }
+        return relationships;
+    }
+
+    /**
+     * @param zip
+     * @param path
+     * @return The parsed part, or <code>null</code> if it does not exist
+     * @throws Exception
+     */
+    private static Document parse(ZipFile zip, String path) throws Exception {
+        ZipArchiveEntry entry = zip.getEntry(path);
+        if (entry == null) {
+            return null;
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        try (InputStream in = zip.getInputStream(entry)) {
+            return factory.newDocumentBuilder().parse(in);
+        }
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+
+    private void putEntry(ZipOutputStream out, String name, ZipArchiveEntry entry) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        try (InputStream in = zip.getInputStream(entry)) {
+            copy(in, out, Long.MAX_VALUE);
+        }
+        out.closeEntry();
+    }
+
+    private static byte[] readBytes(InputStream in, long count) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(in, out, count);
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = count;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                break;
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Reads bytes and counts them
+     */
+    private static class ByteScanner {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int length = 0;
+        private int position = 0;
+        private long offset = 0;
+
+        private ByteScanner(InputStream in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (position == length) {
+                length = Math.max(in.read(buffer), 0);
+                position = 0;
+                if (length == 0) {
+                    return -1;
+                }
+            }
+            offset++;
+            return buffer[position++] & 0xff;
+        }
+
+        private void skipPast(String end) throws IOException {
+            int[] window = new int[end.length()];
+            long count = 0;
+            int b;
+            while ((b = read()) >= 0) {
+                window[(int) (count++ % window.length)] = b;
+                if (count >= window.length && endsWith(window, count, end)) {
+                    return;
+                }
+            }
+        }
+
+        private static boolean endsWith(int[] window, long count, String end) {
+            for (int i = 0; i < end.length(); i++) {
+                if (window[(int) ((count - end.length() + i) % window.length)] != end.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
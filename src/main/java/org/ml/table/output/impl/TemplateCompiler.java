@@ -0,0 +1,799 @@
+package org.ml.table.output.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.ml.table.output.impl.CompiledTemplate.BlockNode;
+import org.ml.table.output.impl.CompiledTemplate.ConstantExpression;
+import org.ml.table.output.impl.CompiledTemplate.EqualityExpression;
+import org.ml.table.output.impl.CompiledTemplate.Expression;
+import org.ml.table.output.impl.CompiledTemplate.ForeachNode;
+import org.ml.table.output.impl.CompiledTemplate.IfNode;
+import org.ml.table.output.impl.CompiledTemplate.IncludeNode;
+import org.ml.table.output.impl.CompiledTemplate.LogicalExpression;
+import org.ml.table.output.impl.CompiledTemplate.MethodExpression;
+import org.ml.table.output.impl.CompiledTemplate.Node;
+import org.ml.table.output.impl.CompiledTemplate.NotExpression;
+import org.ml.table.output.impl.CompiledTemplate.PropertyExpression;
+import org.ml.table.output.impl.CompiledTemplate.RangeExpression;
+import org.ml.table.output.impl.CompiledTemplate.ReferenceNode;
+import org.ml.table.output.impl.CompiledTemplate.SetNode;
+import org.ml.table.output.impl.CompiledTemplate.TextNode;
+import org.ml.table.output.impl.CompiledTemplate.VariableExpression;
+
+/**
+ * Compiles the subset of the Velocity template language used by table
+ * templates into a {@link CompiledTemplate}, which renders without the
+ * overhead of the Velocity interpreter. Supported are:
+ * <ul>
+ * <li>References like <code>$a</code>, <code>$!a</code>,
+ * <code>${a.b}</code> and <code>$a.b($c, 'd')</code></li>
+ * <li><code>#if</code>, <code>#elseif</code>, <code>#else</code> with
+ * <code>!</code>, <code>&amp;&amp;</code>, <code>||</code>, <code>==</code>
+ * and <code>!=</code></li>
+ * <li><code>#foreach</code> over ranges, collections, maps and arrays</li>
+ * <li><code>#set</code> of variables</li>
+ * <li><code>#include</code></li>
+ * <li>Comments</li>
+ * </ul>
+ * Whitespace is removed as in the default "lines" mode of Velocity, i.e. a
+ * directive on a line of its own is removed together with its indentation
+ * and line break.
+ * <p>
+ * Everything else, including escapes, macros, <code>$foreach</code> and
+ * directives followed by a line break in the middle of a line, results in an
+ * {@link UnsupportedOperationException}, in which case the template should
+ * be rendered by Velocity instead.
+ *
+ * @author mlaux
+ */
+public final class TemplateCompiler {
+
+    private enum TokenType {
+        text, reference, directive, comment
+    }
+
+    /**
+     * A part of the template source
+     */
+    private static class Token {
+
+        private final TokenType type;
+        private final int position;
+        private int start;
+        private int end;
+        private String name;
+        private Expression expression;
+        private int slot;
+        private boolean quiet;
+
+        Token(TokenType type, int position) {
+            this.type = type;
+            this.position = position;
+        }
+    }
+
+    private final String source;
+    private final Function<String, String> includeLoader;
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+    private final List<Token> tokens = new ArrayList<>();
+    private int pos = 0;
+
+    /**
+     *
+     * @param source
+     * @param includeLoader
+     */
+    private TemplateCompiler(String source, Function<String, String> includeLoader) {
+        this.source = source;
+        this.includeLoader = includeLoader;
+    }
+
+    /**
+     * Compile a template
+     *
+     * @param source The template text
+     * @param includeLoader Returns the content of a resource referenced by
+     * <code>#include</code>, or <code>null</code> if it does not exist
+     * @return
+     * @throws UnsupportedOperationException If the template uses constructs
+     * which are not supported
+     */
+    public static CompiledTemplate compile(String source, Function<String, String> includeLoader) {
+        if (source == null) {
+            throw new NullPointerException("source may not be null");
+        }
+        if (includeLoader == null) {
+            throw new NullPointerException("includeLoader may not be null");
+        }
+
+        TemplateCompiler compiler = new TemplateCompiler(source, includeLoader);
+        compiler.tokenize();
+        compiler.removeWhitespace();
+        Node root = compiler.buildTree();
+        return new CompiledTemplate(root, compiler.slots.keySet().toArray(new String[compiler.slots.size()]));
+    }
+
+    //.... Tokenizer
+    /**
+     *
+     */
+    private void tokenize() {
+        int textStart = 0;
+        while (pos < source.length()) {
+            char c = source.charAt(pos);
+            int start = pos;
+            Token token = null;
+            if (c == '\\' && pos + 1 < source.length() && (source.charAt(pos + 1) == '$' || source.charAt(pos + 1) == '#')) {
+                throw unsupported("Escapes", pos);
+            } else if (c == '$') {
+                token = readReference();
+            } else if (c == '#') {
+                token = readDirective();
+            }
+            if (token == null) {
+                pos = start + 1;
+                continue;
+            }
+            addText(textStart, start);
+            tokens.add(token);
+            textStart = pos;
+        }
+        addText(textStart, source.length());
+    }
+
+    /**
+     *
+     * @param start
+     * @param end
+     */
+    private void addText(int start, int end) {
+        if (start < end) {
+            Token token = new Token(TokenType.text, start);
+            token.start = start;
+            token.end = end;
+            tokens.add(token);
+        }
+    }
+
+    /**
+     * Read a reference in the text
+     *
+     * @return <code>null</code> if this is not a reference but a plain
+     * <code>$</code>
+     */
+    private Token readReference() {
+        int start = pos;
+        int p = pos + 1;
+        boolean quiet = false;
+        if (p < source.length() && source.charAt(p) == '!') {
+            quiet = true;
+            p++;
+        }
+        boolean braced = false;
+        if (p < source.length() && source.charAt(p) == '{') {
+            braced = true;
+            p++;
+        }
+        if (p >= source.length() || !isIdentifierStart(source.charAt(p))) {
+            return null;
+        }
+
+        pos = p;
+        Expression expression = readReferenceChain();
+        if (braced) {
+            if (pos >= source.length() || source.charAt(pos) != '}') {
+                throw unsupported("Unterminated reference", start);
+            }
+            pos++;
+        } else if (pos < source.length() && source.charAt(pos) == '[') {
+            throw unsupported("Index notation", start);
+        }
+
+        Token token = new Token(TokenType.reference, start);
+        token.expression = expression;
+        token.quiet = quiet;
+        token.start = start;
+        token.end = pos;
+        return token;
+    }
+
+    /**
+     * Read a name followed by properties and method calls. The position is
+     * at the start of the name.
+     *
+     * @return
+     */
+    private Expression readReferenceChain() {
+        int start = pos;
+        String name = readIdentifier();
+        if (name.equals("foreach") || name.equals("velocityCount") || name.equals("velocityHasNext")) {
+            throw unsupported("$" + name, start);
+        }
+        Expression expression = new VariableExpression(slot(name));
+        while (pos + 1 < source.length() && source.charAt(pos) == '.' && isIdentifierStart(source.charAt(pos + 1))) {
+            pos++;
+            String member = readIdentifier();
+            if (pos < source.length() && source.charAt(pos) == '(') {
+                pos++;
+                List<Expression> arguments = new ArrayList<>();
+                skipWhitespace();
+                if (peek() != ')') {
+                    while (true) {
+                        arguments.add(readPrimary());
+                        skipWhitespace();
+                        if (peek() == ',') {
+                            pos++;
+                            skipWhitespace();
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                expect(')');
+                expression = new MethodExpression(expression, member, arguments);
+            } else {
+                expression = new PropertyExpression(expression, member);
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Read a directive or comment
+     *
+     * @return <code>null</code> if this is not a directive but a plain
+     * <code>#</code>
+     */
+    private Token readDirective() {
+        int start = pos;
+        if (source.startsWith("##", pos)) {
+            int end = source.indexOf('\n', pos);
+            pos = end < 0 ? source.length() : end + 1;
+            return new Token(TokenType.comment, start);
+        } else if (source.startsWith("#*", pos)) {
+            int end = source.indexOf("*#", pos + 2);
+            if (end < 0) {
+                throw unsupported("Unterminated comment", start);
+            }
+            pos = end + 2;
+            return new Token(TokenType.comment, start);
+        } else if (source.startsWith("#{", pos) || source.startsWith("#[[", pos) || source.startsWith("#@", pos)) {
+            throw unsupported("Directive syntax", start);
+        }
+        if (pos + 1 >= source.length() || !isIdentifierStart(source.charAt(pos + 1))) {
+            return null;
+        }
+
+        pos++;
+        String name = readIdentifier();
+        Token token = new Token(TokenType.directive, start);
+        token.name = name;
+        switch (name) {
+            case "else":
+            case "end":
+                break;
+            case "if":
+            case "elseif":
+                openArguments();
+                token.expression = readExpression();
+                expect(')');
+                break;
+            case "foreach":
+                openArguments();
+                token.slot = readVariable();
+                skipWhitespace();
+                if (!source.startsWith("in", pos)) {
+                    throw unsupported("#foreach without in", pos);
+                }
+                pos += 2;
+                skipWhitespace();
+                token.expression = readExpression();
+                expect(')');
+                break;
+            case "set":
+                openArguments();
+                token.slot = readVariable();
+                skipWhitespace();
+                expect('=');
+                token.expression = readExpression();
+                expect(')');
+                break;
+            case "include":
+                openArguments();
+                token.expression = readPrimary();
+                expect(')');
+                break;
+            case "parse":
+            case "macro":
+            case "break":
+            case "stop":
+            case "define":
+            case "evaluate":
+                throw unsupported("#" + name, start);
+            default:
+                //.... Either a macro call or plain text
+                skipWhitespace();
+                if (peek() == '(') {
+                    throw unsupported("Macro call #" + name, start);
+                }
+                pos = start;
+                return null;
+        }
+        token.start = start;
+        token.end = pos;
+        return token;
+    }
+
+    /**
+     *
+     */
+    private void openArguments() {
+        skipWhitespace();
+        expect('(');
+    }
+
+    /**
+     * Read the variable of #set or #foreach
+     *
+     * @return
+     */
+    private int readVariable() {
+        skipWhitespace();
+        int start = pos;
+        expect('$');
+        boolean braced = peek() == '{';
+        if (braced) {
+            pos++;
+        }
+        if (!isIdentifierStart(peek())) {
+            throw unsupported("Variable expected", start);
+        }
+        String name = readIdentifier();
+        if (braced) {
+            expect('}');
+        }
+        if (peek() == '.') {
+            throw unsupported("Assignment to a property", start);
+        }
+        return slot(name);
+    }
+
+    //.... Expressions
+    /**
+     * Read an expression with ||, &amp;&amp;, ==, != and ! in the usual
+     * precedence
+     *
+     * @return
+     */
+    private Expression readExpression() {
+        Expression expression = readAnd();
+        while (true) {
+            skipWhitespace();
+            if (source.startsWith("||", pos)) {
+                pos += 2;
+            } else if (isWord("or")) {
+                pos += 2;
+            } else {
+                return expression;
+            }
+            expression = new LogicalExpression(expression, readAnd(), false);
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    private Expression readAnd() {
+        Expression expression = readEquality();
+        while (true) {
+            skipWhitespace();
+            if (source.startsWith("&&", pos)) {
+                pos += 2;
+            } else if (isWord("and")) {
+                pos += 3;
+            } else {
+                return expression;
+            }
+            expression = new LogicalExpression(expression, readEquality(), true);
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    private Expression readEquality() {
+        Expression expression = readUnary();
+        skipWhitespace();
+        boolean equal;
+        if (source.startsWith("==", pos) || isWord("eq")) {
+            equal = true;
+        } else if (source.startsWith("!=", pos) || isWord("ne")) {
+            equal = false;
+        } else {
+            return expression;
+        }
+        pos += 2;
+        return new EqualityExpression(expression, readUnary(), equal);
+    }
+
+    /**
+     *
+     * @return
+     */
+    private Expression readUnary() {
+        skipWhitespace();
+        if (peek() == '!' && !source.startsWith("!=", pos)) {
+            pos++;
+            return new NotExpression(readUnary());
+        } else if (isWord("not")) {
+            pos += 3;
+            return new NotExpression(readUnary());
+        } else if (peek() == '(') {
+            pos++;
+            Expression expression = readExpression();
+            expect(')');
+            return expression;
+        }
+        Expression expression = readPrimary();
+        skipWhitespace();
+        char c = peek();
+        if (c == '<' || c == '>' || c == '+' || c == '-' || c == '*' || c == '/' || c == '%') {
+            throw unsupported("Operator " + c, pos);
+        }
+        return expression;
+    }
+
+    /**
+     * Read a reference, a literal or a range
+     *
+     * @return
+     */
+    private Expression readPrimary() {
+        skipWhitespace();
+        int start = pos;
+        char c = peek();
+        if (c == '$') {
+            pos++;
+            if (peek() == '!') {
+                pos++;
+            }
+            boolean braced = peek() == '{';
+            if (braced) {
+                pos++;
+            }
+            if (!isIdentifierStart(peek())) {
+                throw unsupported("Reference expected", start);
+            }
+            Expression expression = readReferenceChain();
+            if (braced) {
+                expect('}');
+            }
+            return expression;
+        } else if (c == '\'' || c == '"') {
+            int end = source.indexOf(c, pos + 1);
+            if (end < 0) {
+                throw unsupported("Unterminated string", start);
+            }
+            String value = source.substring(pos + 1, end);
+            if (c == '"' && (value.indexOf('$') >= 0 || value.indexOf('#') >= 0)) {
+                throw unsupported("Interpolated string", start);
+            }
+            pos = end + 1;
+            return new ConstantExpression(value);
+        } else if (c == '[') {
+            pos++;
+            Expression from = readPrimary();
+            skipWhitespace();
+            if (!source.startsWith("..", pos)) {
+                throw unsupported("List literal", start);
+            }
+            pos += 2;
+            Expression to = readPrimary();
+            skipWhitespace();
+            expect(']');
+            return new RangeExpression(from, to);
+        } else if (c == '-' || Character.isDigit(c)) {
+            pos++;
+            while (Character.isDigit(peek())) {
+                pos++;
+            }
+            if (peek() == '.' && pos + 1 < source.length() && Character.isDigit(source.charAt(pos + 1))) {
+                throw unsupported("Floating point literal", start);
+            }
+            try {
+                return new ConstantExpression(Integer.valueOf(source.substring(start, pos)));
+            } catch (NumberFormatException ex) {
+                throw unsupported("Number literal", start);
+            }
+        } else if (isWord("true")) {
+            pos += 4;
+            return new ConstantExpression(Boolean.TRUE);
+        } else if (isWord("false")) {
+            pos += 5;
+            return new ConstantExpression(Boolean.FALSE);
+        }
+        throw unsupported("Expression", start);
+    }
+
+    //.... Whitespace
+    /**
+     * Remove the indentation of directives at the start of a line, and the
+     * rest of the line if there is nothing else on it
+     */
+    private void removeWhitespace() {
+        //.... Decide on the original text first, as neighbouring directives share a text token
+        List<int[]> trims = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type != TokenType.directive) {
+                continue;
+            }
+            Token previous = i > 0 ? tokens.get(i - 1) : null;
+            Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+            if ((previous != null && previous.type == TokenType.comment) || (next != null && next.type == TokenType.comment)) {
+                throw unsupported("Comment next to a directive", token.position);
+            }
+
+            boolean lineStart;
+            if (previous == null) {
+                lineStart = true;
+            } else if (previous.type == TokenType.text) {
+                int lineBreak = source.lastIndexOf('\n', previous.end - 1);
+                if (lineBreak < previous.start && i > 1 && tokens.get(i - 2).type == TokenType.comment) {
+                    throw unsupported("Comment before a directive", token.position);
+                }
+                lineStart = (lineBreak >= previous.start || i == 1) && isBlank(Math.max(lineBreak + 1, previous.start), previous.end);
+            } else {
+                lineStart = false;
+            }
+            int lineEnd = -1;
+            if (next == null) {
+                lineEnd = source.length();
+            } else if (next.type == TokenType.text) {
+                int lineBreak = source.indexOf('\n', next.start);
+                if (lineBreak >= 0 && lineBreak < next.end && isBlank(next.start, lineBreak)) {
+                    lineEnd = lineBreak + 1;
+                }
+            }
+
+            if (lineStart) {
+                if (previous != null) {
+                    int lineBreak = source.lastIndexOf('\n', previous.end - 1);
+                    trims.add(new int[]{i - 1, -1, Math.max(lineBreak + 1, previous.start)});
+                }
+                if (lineEnd >= 0 && next != null) {
+                    trims.add(new int[]{i + 1, lineEnd, -1});
+                }
+            } else if (lineEnd >= 0 && next != null) {
+                //.... Velocity handles line breaks after directives inside a line inconsistently
+                throw unsupported("Line break after #" + token.name + " inside a line", token.position);
+            }
+        }
+        for (int[] trim : trims) {
+            Token token = tokens.get(trim[0]);
+            if (trim[1] >= 0) {
+                token.start = Math.max(token.start, trim[1]);
+            } else {
+                token.end = Math.min(token.end, trim[2]);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param start
+     * @param end
+     * @return
+     */
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //.... Tree
+    /**
+     * The nodes of an open #if or #foreach
+     */
+    private static class Frame {
+
+        private final Token token;
+        private final List<Expression> conditions = new ArrayList<>();
+        private final List<Node> branches = new ArrayList<>();
+        private List<Node> nodes = new ArrayList<>();
+        private boolean otherwise = false;
+
+        Frame(Token token) {
+            this.token = token;
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    private Node buildTree() {
+        Deque<Frame> frames = new ArrayDeque<>();
+        Frame root = new Frame(null);
+        frames.push(root);
+        for (Token token : tokens) {
+            Frame frame = frames.peek();
+            switch (token.type) {
+                case text:
+                    if (token.start < token.end) {
+                        frame.nodes.add(new TextNode(source.substring(token.start, token.end)));
+                    }
+                    break;
+                case reference:
+                    frame.nodes.add(new ReferenceNode(token.expression, source.substring(token.start, token.end), token.quiet));
+                    break;
+                case comment:
+                    break;
+                default:
+                    switch (token.name) {
+                        case "if":
+                            Frame ifFrame = new Frame(token);
+                            ifFrame.conditions.add(token.expression);
+                            frames.push(ifFrame);
+                            break;
+                        case "foreach":
+                            frames.push(new Frame(token));
+                            break;
+                        case "elseif":
+                        case "else":
+                            if (frame.token == null || !frame.token.name.equals("if") || frame.otherwise) {
+                                throw unsupported("#" + token.name + " without #if", token.position);
+                            }
+                            frame.branches.add(new BlockNode(frame.nodes));
+                            frame.nodes = new ArrayList<>();
+                            if (token.name.equals("elseif")) {
+                                frame.conditions.add(token.expression);
+                            } else {
+                                frame.otherwise = true;
+                            }
+                            break;
+                        case "end":
+                            if (frame.token == null) {
+                                throw unsupported("#end without block", token.position);
+                            }
+                            frames.pop();
+                            frames.peek().nodes.add(close(frame));
+                            break;
+                        case "set":
+                            frame.nodes.add(new SetNode(token.slot, token.expression));
+                            break;
+                        default:
+                            frame.nodes.add(new IncludeNode(token.expression, includeLoader));
+                            break;
+                    }
+            }
+        }
+        if (frames.size() > 1) {
+            throw unsupported("Missing #end", frames.peek().token.position);
+        }
+        return new BlockNode(root.nodes);
+    }
+
+    /**
+     *
+     * @param frame
+     * @return
+     */
+    private Node close(Frame frame) {
+        Node block = new BlockNode(frame.nodes);
+        if (frame.token.name.equals("foreach")) {
+            return new ForeachNode(frame.token.slot, frame.token.expression, block);
+        }
+        if (frame.otherwise) {
+            return new IfNode(frame.conditions, frame.branches, block);
+        }
+        frame.branches.add(block);
+        return new IfNode(frame.conditions, frame.branches, null);
+    }
+
+    //.... Helpers
+    /**
+     *
+     * @param name
+     * @return
+     */
+    private int slot(String name) {
+        return slots.computeIfAbsent(name, k -> slots.size());
+    }
+
+    /**
+     *
+     * @return
+     */
+    private String readIdentifier() {
+        int start = pos;
+        while (pos < source.length() && isIdentifierPart(source.charAt(pos))) {
+            pos++;
+        }
+        return source.substring(start, pos);
+    }
+
+    /**
+     *
+     * @param word
+     * @return
+     */
+    private boolean isWord(String word) {
+        int end = pos + word.length();
+        return source.startsWith(word, pos) && (end >= source.length() || !isIdentifierPart(source.charAt(end)));
+    }
+
+    /**
+     *
+     * @return The current character or 0 at the end
+     */
+    private char peek() {
+        return pos < source.length() ? source.charAt(pos) : 0;
+    }
+
+    /**
+     *
+     */
+    private void skipWhitespace() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     *
+     * @param c
+     */
+    private void expect(char c) {
+        skipWhitespace();
+        if (peek() != c) {
+            throw unsupported("'" + c + "' expected", pos);
+        }
+        pos++;
+    }
+
+    /**
+     *
+     * @param c
+     * @return
+     */
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    /**
+     *
+     * @param c
+     * @return
+     */
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    /**
+     *
+     * @param what
+     * @param position
+     * @return
+     */
+    private UnsupportedOperationException unsupported(String what, int position) {
+        int line = 1;
+        for (int i = 0; i < position && i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new UnsupportedOperationException(what + " not supported at line " + line);
+    }
+}
@@ -2,21 +2,37 @@ package org.ml.table.output.impl;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.ml.table.Table;
+import org.ml.table.render.RenderPlan;
 import org.ml.table.render.RenderingContext;
 import org.ml.tools.PropertyManager;
 import org.ml.tools.logging.LoggerFactory;
-import org.ml.tools.velocity.VelocityConfig;
 import static org.ml.tools.velocity.VelocityConfig.RequiredKey;
 import static org.ml.tools.velocity.VelocityConfig.OptionalKey;
 
@@ -30,14 +46,21 @@ import static org.ml.tools.velocity.VelocityConfig.OptionalKey;
 public class VelocityWriter {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(VelocityWriter.class.getName());
-    private PropertyManager propertyManager;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Map<String, CachedTemplate> TEMPLATE_CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, VelocityEngine> ENGINES = new ConcurrentHashMap<>();
+    private PropertyManager propertyManager = new PropertyManager();
+    private boolean checkModification = false;
+    private int parallelism = 1;
+    private boolean gzip = false;
+    private boolean compileTemplates = false;
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy | HH:mm");
 
     /**
      * These are the keys injected into the VelocityContext
      */
     private enum PrivateContextKey {
-        renderingContext, table, tables, date
+        renderingContext, table, tables, date, renderPlan, renderPlans
     }
 
     /**
@@ -76,6 +99,68 @@ public class VelocityWriter {
         this.propertyManager = propertyManager;
     }
 
+    /**
+     * Set the number of threads used to build the {@link RenderPlan} of a
+     * table, i.e. to render the cell contents. The merge of the template
+     * itself stays sequential. Renderers attached to the tables must be
+     * thread-safe if this is larger than 1.
+     *
+     * @param parallelism The maximum number of row bands rendered concurrently
+     * @return
+     */
+    public VelocityWriter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be larger than 0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Compress the output with gzip. The file names are not changed.
+     *
+     * @param gzip
+     * @return
+     */
+    public VelocityWriter setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Render templates with a {@link CompiledTemplate} instead of the Velocity
+     * interpreter. Templates using constructs not supported by the
+     * {@link TemplateCompiler} are still rendered by Velocity.
+     *
+     * @param compileTemplates
+     * @return
+     */
+    public VelocityWriter setCompileTemplates(boolean compileTemplates) {
+        this.compileTemplates = compileTemplates;
+        return this;
+    }
+
+    /**
+     * Templates are parsed once and shared by all writer instances. If this is
+     * set, templates loaded from a template directory are parsed again when
+     * the modification time of the template file has changed since it was
+     * cached. This is useful while templates are being developed.
+     *
+     * @param checkModification
+     * @return
+     */
+    public VelocityWriter setCheckModification(boolean checkModification) {
+        this.checkModification = checkModification;
+        return this;
+    }
+
+    /**
+     * Remove all templates from the cache shared by the writer instances
+     */
+    public static void clearTemplateCache() {
+        TEMPLATE_CACHE.clear();
+    }
+
     /**
      * Write a single table
      *
@@ -90,6 +175,36 @@ public class VelocityWriter {
         write(null, table, fileName);
     }
 
+    /**
+     * Write a single table to the given stream using UTF-8. The stream is
+     * flushed, but not closed.
+     *
+     * @param table
+     * @param stream
+     * @throws Exception
+     */
+    public void write(Table table, OutputStream stream) throws Exception {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        write(null, table, stream);
+    }
+
+    /**
+     * Write a single table to the given channel using UTF-8. The channel is not
+     * closed.
+     *
+     * @param table
+     * @param channel
+     * @throws Exception
+     */
+    public void write(Table table, WritableByteChannel channel) throws Exception {
+        if (channel == null) {
+            throw new NullPointerException("channel may not be null");
+        }
+        write(table, Channels.newOutputStream(channel));
+    }
+
     /**
      * Write multiple tables into a single file
      *
@@ -104,6 +219,98 @@ public class VelocityWriter {
         write(tables, null, fileName);
     }
 
+    /**
+     * Write multiple tables to the given stream using UTF-8. The stream is
+     * flushed, but not closed.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param stream
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, OutputStream stream) throws Exception {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        write(tables, null, stream);
+    }
+
+    /**
+     * Write multiple tables to the given channel using UTF-8. The channel is
+     * not closed.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param channel
+     * @throws Exception
+     */
+    public void write(Map<String, Table> tables, WritableByteChannel channel) throws Exception {
+        if (channel == null) {
+            throw new NullPointerException("channel may not be null");
+        }
+        write(tables, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Write a single table asynchronously to the given stream. Failures are
+     * reported through the returned future.
+     *
+     * @param table
+     * @param stream
+     * @param executor The executor running the write operation
+     * @return A future completing when the table has been written
+     */
+    public CompletableFuture<Void> writeAsync(Table table, OutputStream stream, Executor executor) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        return OutputHelper.runAsync(() -> write(null, table, stream), executor);
+    }
+
+    /**
+     * Write a single table asynchronously to the given stream using the common
+     * fork/join pool.
+     *
+     * @param table
+     * @param stream
+     * @return A future completing when the table has been written
+     */
+    public CompletableFuture<Void> writeAsync(Table table, OutputStream stream) {
+        return writeAsync(table, stream, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Write multiple tables asynchronously to the given stream. Failures are
+     * reported through the returned future.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param stream
+     * @param executor The executor running the write operation
+     * @return A future completing when the tables have been written
+     */
+    public CompletableFuture<Void> writeAsync(Map<String, Table> tables, OutputStream stream, Executor executor) {
+        if (tables == null) {
+            throw new NullPointerException("tables may not be null");
+        }
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
+        return OutputHelper.runAsync(() -> write(tables, null, stream), executor);
+    }
+
+    /**
+     * Write multiple tables asynchronously to the given stream using the
+     * common fork/join pool.
+     *
+     * @param tables The keys are used as headers for the tables
+     * @param stream
+     * @return A future completing when the tables have been written
+     */
+    public CompletableFuture<Void> writeAsync(Map<String, Table> tables, OutputStream stream) {
+        return writeAsync(tables, stream, ForkJoinPool.commonPool());
+    }
+
     /**
      * Generic helper
      *
@@ -117,51 +324,209 @@ public class VelocityWriter {
             throw new NullPointerException("fileName may not be null");
         }
 
-        PropertyManager velocityPropertyManager = new PropertyManager();
+        LOGGER.log(Level.INFO, "Writing output file {0}", fileName);
+        OutputHelper.writeFile(fileName, stream -> write(tables, table, stream));
+    }
+
+    /**
+     * Generic helper
+     *
+     * @param tables
+     * @param table
+     * @param stream
+     * @throws Exception
+     */
+    private void write(Map<String, Table> tables, Table table, OutputStream stream) throws Exception {
+        if (stream == null) {
+            throw new NullPointerException("stream may not be null");
+        }
 
         //.... A separate template file name can be specified which is then used instead of the default template contained in the package
+        String templateName;
+        String templateDirectory = null;
         if (propertyManager.containsProperty(RequiredKey.templateName)) {
-            velocityPropertyManager.setProperty(RequiredKey.templateName, propertyManager.getProperty(RequiredKey.templateName));
+            templateName = propertyManager.getProperty(RequiredKey.templateName);
             if (propertyManager.containsProperty(OptionalKey.templateDirectory)) {
-                velocityPropertyManager.setProperty(OptionalKey.templateDirectory, propertyManager.getProperty(OptionalKey.templateDirectory));
+                templateDirectory = propertyManager.getProperty(OptionalKey.templateDirectory);
             } else {
                 throw new UnsupportedOperationException("If a template file is specified, a template directory also needs ot be provided");
             }
         } else {
             if (table != null) {
-                velocityPropertyManager.setProperty(RequiredKey.templateName, "velocity/table.vm");
+                templateName = "velocity/table.vm";
             } else {
-                velocityPropertyManager.setProperty(RequiredKey.templateName, "velocity/tables.vm");
+                templateName = "velocity/tables.vm";
             }
         }
 
-        VelocityConfig velocityConfig = new VelocityConfig(velocityPropertyManager);
-        Template template = velocityConfig.getTemplate();
-        VelocityContext context = new VelocityContext();
+        CachedTemplate template = getTemplate(templateName, templateDirectory);
+        Map<String, Object> context = new HashMap<>();
         context.put(PrivateContextKey.renderingContext.toString(), RenderingContext.VELOCITY);
         if (table != null) {
             context.put(PrivateContextKey.table.toString(), table);
+            context.put(PrivateContextKey.renderPlan.toString(), new RenderPlan(table, RenderingContext.VELOCITY, parallelism));
         } else {
             context.put(PrivateContextKey.tables.toString(), tables);
+            Map<String, RenderPlan> renderPlans = new LinkedHashMap<>();
+            for (String tableKey : tables.keySet()) {
+                renderPlans.put(tableKey, new RenderPlan(tables.get(tableKey), RenderingContext.VELOCITY, parallelism));
+            }
+            context.put(PrivateContextKey.renderPlans.toString(), renderPlans);
         }
         for (String key : propertyManager.getProperties().keySet()) {
             context.put(key, propertyManager.getProperty(key));
         }
         context.put(PrivateContextKey.date.toString(), formatter.format(ZonedDateTime.now()));
 
-        BufferedWriter writer;
-        File file = new File(fileName);
-        if (file.getParentFile() != null) {
-            file.getParentFile().mkdirs();
-        }
-        LOGGER.log(Level.INFO, "Writing output file {0}", fileName);
-        if (file.exists()) {
-            file.delete();
+        OutputStream out = gzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : stream;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        CompiledTemplate compiledTemplate = compileTemplates ? template.getCompiledTemplate() : null;
+        if (compiledTemplate != null) {
+            compiledTemplate.merge(context, writer);
+        } else {
+            template.template.merge(new VelocityContext(context), writer);
         }
-        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), StandardCharsets.UTF_8));
-        template.merge(context, writer);
         writer.flush();
-        writer.close();
+        if (gzip) {
+            ((GZIPOutputStream) out).finish();
+            out.flush();
+        }
+    }
+
+    /**
+     * Retrieve a template from the cache, parsing it on first use. All
+     * templates are parsed by one engine per template directory (see
+     * {@link #getEngine(String)}). Parsed templates can be merged
+     * concurrently.
+     *
+     * @param templateName
+     * @param templateDirectory <code>null</code> for templates loaded from
+     * the class path
+     * @return
+     */
+    private CachedTemplate getTemplate(String templateName, String templateDirectory) {
+        String key = templateDirectory + "|" + templateName;
+        CachedTemplate cachedTemplate = TEMPLATE_CACHE.computeIfAbsent(key, k -> new CachedTemplate(templateName, templateDirectory));
+
+        if (checkModification && cachedTemplate.isModified()) {
+            LOGGER.log(Level.INFO, "Template {0} has been modified, reloading", templateName);
+            CachedTemplate reloadedTemplate = new CachedTemplate(templateName, templateDirectory);
+            TEMPLATE_CACHE.put(key, reloadedTemplate);
+            cachedTemplate = reloadedTemplate;
+        }
+
+        return cachedTemplate;
+    }
+
+    /**
+     * Retrieve the engine loading templates from the given directory, which
+     * is initialized on first use and shared by all writers afterwards
+     *
+     * @param templateDirectory <code>null</code> for templates loaded from
+     * the class path
+     * @return
+     */
+    private static VelocityEngine getEngine(String templateDirectory) {
+        String key = templateDirectory != null ? "file:" + templateDirectory : "class";
+        return ENGINES.computeIfAbsent(key, k -> {
+            VelocityEngine engine = new VelocityEngine();
+            if (templateDirectory != null) {
+                engine.setProperty(RuntimeConstants.RESOURCE_LOADERS, "file");
+                engine.setProperty(RuntimeConstants.FILE_RESOURCE_LOADER_PATH, templateDirectory);
+            } else {
+                engine.setProperty(RuntimeConstants.RESOURCE_LOADERS, "class");
+                engine.setProperty("resource.loader.class.class", ClasspathResourceLoader.class.getName());
+            }
+            engine.init();
+            return engine;
+        });
+    }
+
+    /**
+     * A parsed template together with the modification time of its file. The
+     * compiled form is created on first use.
+     */
+    private static class CachedTemplate {
+
+        private final Template template;
+        private final String templateName;
+        private final String templateDirectory;
+        private final File file;
+        private final long lastModified;
+        private volatile CompiledTemplate compiledTemplate;
+        private volatile boolean compileFailed = false;
+
+        /**
+         *
+         * @param templateName
+         * @param templateDirectory
+         */
+        CachedTemplate(String templateName, String templateDirectory) {
+            this.templateName = templateName;
+            this.templateDirectory = templateDirectory;
+            if (templateDirectory != null) {
+                file = new File(templateDirectory, templateName);
+                lastModified = file.lastModified();
+            } else {
+                file = null;
+                lastModified = 0L;
+            }
+            template = getEngine(templateDirectory).getTemplate(templateName, StandardCharsets.UTF_8.name());
+        }
+
+        /**
+         *
+         * @return
+         */
+        boolean isModified() {
+            return file != null && file.lastModified() != lastModified;
+        }
+
+        /**
+         *
+         * @return The compiled template or <code>null</code> if the template
+         * cannot be compiled
+         */
+        CompiledTemplate getCompiledTemplate() {
+            if (compiledTemplate == null && !compileFailed) {
+                synchronized (this) {
+                    if (compiledTemplate == null && !compileFailed) {
+                        try {
+                            String source = readResource(templateName);
+                            if (source == null) {
+                                throw new IllegalArgumentException("Template " + templateName + " not found");
+                            }
+                            compiledTemplate = TemplateCompiler.compile(source, this::readResource);
+                        } catch (UnsupportedOperationException | IllegalArgumentException ex) {
+                            LOGGER.log(Level.INFO, "Template {0} is rendered by Velocity: {1}", new Object[]{templateName, ex.getMessage()});
+                            compileFailed = true;
+                        }
+                    }
+                }
+            }
+            return compiledTemplate;
+        }
+
+        /**
+         * Read a resource from the template directory or the class path, as
+         * the Velocity resource loader does
+         *
+         * @param name
+         * @return The content or <code>null</code> if there is none
+         */
+        private String readResource(String name) {
+            try {
+                if (templateDirectory != null) {
+                    File resource = new File(templateDirectory, name);
+                    return resource.isFile() ? new String(Files.readAllBytes(resource.toPath()), StandardCharsets.UTF_8) : null;
+                }
+                try (InputStream stream = VelocityWriter.class.getClassLoader().getResourceAsStream(name)) {
+                    return stream != null ? new String(stream.readAllBytes(), StandardCharsets.UTF_8) : null;
+                }
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Resource " + name + " could not be read", ex);
+            }
+        }
     }
 
 }
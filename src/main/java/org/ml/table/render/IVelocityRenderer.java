@@ -1,5 +1,6 @@
 package org.ml.table.render;
 
+import java.io.IOException;
 import org.ml.table.Cell;
 
 /**
@@ -15,6 +16,23 @@ public interface IVelocityRenderer extends IRenderer {
      */
     String renderCell(Cell cell);
 
+    /**
+     * This appends the same representation as {@link #renderCell(Cell)} to the
+     * given sink. Renderers should override this to avoid creating a string
+     * per cell; the default simply appends the result of
+     * {@link #renderCell(Cell)}
+     *
+     * @param cell
+     * @param out
+     * @throws IOException
+     */
+    default void renderCell(Cell cell, Appendable out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }
+        out.append(renderCell(cell));
+    }
+
     /**
      * This returns a string with styling information, for example a class="name" string
      * @param cell
@@ -0,0 +1,109 @@
+package org.ml.table.render;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded cache for rendered cell contents with least recently used
+ * eviction. Keys are compared with {@link Object#equals(Object)}, so values
+ * like strings and numbers are matched by value, while content classes not
+ * overriding equals are matched by identity. Cached keys should be immutable.
+ * <p>
+ * The cache is thread-safe, so renderers using it can be shared between
+ * threads.
+ *
+ * @author mlaux
+ * @param <K>
+ * @param <V>
+ */
+public class RenderCache<K, V> {
+
+    private final int maxSize;
+    private final Map<K, V> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxSize The maximum number of entries kept
+     */
+    public RenderCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be larger than 0");
+        }
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<K, V>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > RenderCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param key
+     * @return The cached value or <code>null</code> if there is none
+     */
+    public synchronized V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key may not be null");
+        }
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * @param key
+     * @param value
+     */
+    public synchronized void put(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("key may not be null");
+        }
+        if (value == null) {
+            throw new NullPointerException("value may not be null");
+        }
+        entries.put(key, value);
+    }
+
+    /**
+     *
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of lookups which found a value
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups which did not find a value
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
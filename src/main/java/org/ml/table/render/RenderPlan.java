@@ -0,0 +1,298 @@
+package org.ml.table.render;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.ml.table.Cell;
+import org.ml.table.CellCursor;
+import org.ml.table.Table;
+
+/**
+ * A flat view of a table for templates. For each row, only the visible slots
+ * are listed together with their coordinates, spans, style class and the
+ * already rendered content, so a template can simply loop over the rows and
+ * their cells instead of probing every slot of the table:
+ * <pre>
+ * #foreach ($planRow in $renderPlan.rows)
+ *   #foreach ($entry in $planRow.cells)
+ *     ... $entry.rowSpan $entry.colSpan $entry.style $entry.content
+ *   #end
+ * #end
+ * </pre> The plan is computed on first access and then kept, so templates
+ * which do not use it do not pay for it.
+ *
+ * @author mlaux
+ */
+public class RenderPlan {
+
+    private static final int MIN_BAND_ROWS = 64;
+    private static final int BANDS_PER_THREAD = 4;
+    private final Table table;
+    private final RenderingContext renderingContext;
+    private final int parallelism;
+    private List<Row> rows;
+
+    /**
+     * @param table
+     * @param renderingContext The context used to look up the renderer of the
+     * table
+     */
+    public RenderPlan(Table table, RenderingContext renderingContext) {
+        this(table, renderingContext, 1);
+    }
+
+    /**
+     * With a parallelism larger than 1, large tables are split into bands of
+     * rows not cut by any cell spanning several rows, and the bands are
+     * rendered concurrently on a fork/join pool. The renderer attached to the
+     * table must then be thread-safe.
+     *
+     * @param table
+     * @param renderingContext The context used to look up the renderer of the
+     * table
+     * @param parallelism The maximum number of bands rendered concurrently
+     */
+    public RenderPlan(Table table, RenderingContext renderingContext, int parallelism) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (renderingContext == null) {
+            throw new NullPointerException("renderingContext may not be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be larger than 0");
+        }
+        this.table = table;
+        this.renderingContext = renderingContext;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return The rows of the table in ascending order
+     */
+    public List<Row> getRows() {
+        if (rows == null) {
+            try {
+                rows = Collections.unmodifiableList(createRows());
+            } catch (IOException ex) {
+                //.... Can not happen with a StringBuilder
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return
+     */
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     *
+     * @return
+     * @throws IOException
+     */
+    private List<Row> createRows() throws IOException {
+        IVelocityRenderer renderer = null;
+        if (table.getRenderer(renderingContext) instanceof IVelocityRenderer) {
+            renderer = (IVelocityRenderer) table.getRenderer(renderingContext);
+        }
+
+        if (parallelism == 1 || table.getRowNumber() < 2 * MIN_BAND_ROWS) {
+            return createRows(renderer, table.getRow0(), table.getRowEnd() + 1);
+        }
+
+        int[] bands = RowBands.split(table, Math.max(MIN_BAND_ROWS, table.getRowNumber() / (BANDS_PER_THREAD * parallelism)));
+        IVelocityRenderer bandRenderer = renderer;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<List<Row>>> futures = new ArrayList<>(bands.length - 1);
+            for (int i = 0; i < bands.length - 1; i++) {
+                int from = bands[i];
+                int to = bands[i + 1];
+                futures.add(pool.submit(() -> createRows(bandRenderer, from, to)));
+            }
+
+            List<Row> list = new ArrayList<>(table.getRowNumber());
+            for (Future<List<Row>> future : futures) {
+                try {
+                    list.addAll(future.get());
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    if (ex.getCause() instanceof IOException) {
+                        throw (IOException) ex.getCause();
+                    }
+                    throw new IllegalStateException(ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(ex);
+                }
+            }
+            return list;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     *
+     * @param renderer
+     * @param from The first row
+     * @param to The row after the last row
+     * @return
+     * @throws IOException
+     */
+    private List<Row> createRows(IVelocityRenderer renderer, int from, int to) throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        List<Row> list = new ArrayList<>(to - from);
+        CellCursor cursor = table.cursor(from, to);
+        while (cursor.nextRow()) {
+            int r = cursor.getRow();
+            List<Entry> entries = new ArrayList<>();
+            while (cursor.nextVisible()) {
+                int c = cursor.getCol();
+                if (cursor.isDefaultCell()) {
+                    entries.add(new Entry(r, c, 1, 1, "", "", true));
+                } else {
+                    Cell cell = cursor.getCell();
+                    String style = cell.getStyle() != null ? cell.getStyle().toString() : "";
+                    String content;
+                    if (renderer != null) {
+                        sb.setLength(0);
+                        renderer.renderCell(cell, sb);
+                        content = sb.toString();
+                    } else {
+                        Object value = cell.getContent("name");
+                        content = value != null ? value.toString() : "";
+                    }
+                    entries.add(new Entry(r, c, cell.getRowSpan(), cell.getColSpan(), style, content, false));
+                }
+            }
+            list.add(new Row(r, entries));
+        }
+        return list;
+    }
+
+    /**
+     * The visible cells of one table row
+     */
+    public static class Row {
+
+        private final int row;
+        private final List<Entry> cells;
+
+        /**
+         * @param row
+         * @param cells
+         */
+        Row(int row, List<Entry> cells) {
+            this.row = row;
+            this.cells = Collections.unmodifiableList(cells);
+        }
+
+        /**
+         * @return The row index in the table
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * @return The visible cells of the row in ascending column order
+         */
+        public List<Entry> getCells() {
+            return cells;
+        }
+    }
+
+    /**
+     * A single visible cell. Default cells have empty style and content
+     */
+    public static class Entry {
+
+        private final int row;
+        private final int col;
+        private final int rowSpan;
+        private final int colSpan;
+        private final String style;
+        private final String content;
+        private final boolean defaultCell;
+
+        /**
+         * @param row
+         * @param col
+         * @param rowSpan
+         * @param colSpan
+         * @param style
+         * @param content
+         * @param defaultCell
+         */
+        Entry(int row, int col, int rowSpan, int colSpan, String style, String content, boolean defaultCell) {
+            this.row = row;
+            this.col = col;
+            this.rowSpan = rowSpan;
+            this.colSpan = colSpan;
+            this.style = style;
+            this.content = content;
+            this.defaultCell = defaultCell;
+        }
+
+        /**
+         * @return
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * @return
+         */
+        public int getCol() {
+            return col;
+        }
+
+        /**
+         * @return
+         */
+        public int getRowSpan() {
+            return rowSpan;
+        }
+
+        /**
+         * @return
+         */
+        public int getColSpan() {
+            return colSpan;
+        }
+
+        /**
+         * @return The style class of the cell or an empty string
+         */
+        public String getStyle() {
+            return style;
+        }
+
+        /**
+         * @return The rendered content of the cell
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return
+         */
+        public boolean isDefaultCell() {
+            return defaultCell;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.ml.table.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.ml.table.Table;
+
+/**
+ * Splits a table into bands of consecutive rows which can be rendered
+ * independently of each other, i.e. no cell spanning more than one row is cut
+ * by the edge of a band (see {@link Table#isRowBoundary(int)}).
+ *
+ * @author mlaux
+ */
+public final class RowBands {
+
+    /**
+     *
+     */
+    private RowBands() {
+
+    }
+
+    /**
+     * A band ends at the last row boundary within the requested number of
+     * rows. If a span covers that whole range, the band is extended to the
+     * first boundary after the span.
+     *
+     * @param table
+     * @param rowsPerBand The requested number of rows per band
+     * @return The logical start rows of the bands, followed by the row after
+     * the last row of the table. For a table with a single band this is
+     * <code>{row0, rowEnd + 1}</code>
+     */
+    public static int[] split(Table table, int rowsPerBand) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        return split(table, table.getRow0(), table.getRowEnd() + 1, rowsPerBand);
+    }
+
+    /**
+     * Split a range of rows. Both ends of the range need to be row boundaries
+     *
+     * @param table
+     * @param from The first row
+     * @param to The row after the last row
+     * @param rowsPerBand The requested number of rows per band
+     * @return The logical start rows of the bands, followed by <code>to</code>
+     */
+    public static int[] split(Table table, int from, int to, int rowsPerBand) {
+        if (table == null) {
+            throw new NullPointerException("table may not be null");
+        }
+        if (rowsPerBand < 1) {
+            throw new IllegalArgumentException("rowsPerBand must be larger than 0");
+        }
+        if (from > to) {
+            throw new IllegalArgumentException("from may not be larger than to");
+        }
+
+        List<Integer> starts = new ArrayList<>();
+        int start = from;
+        while (start < to) {
+            starts.add(start);
+            int next = Math.min(start + rowsPerBand, to);
+            while (next > start + 1 && !table.isRowBoundary(next)) {
+                next--;
+            }
+            if (!table.isRowBoundary(next)) {
+                next = start + rowsPerBand + 1;
+                while (next < to && !table.isRowBoundary(next)) {
+                    next++;
+                }
+            }
+            start = next;
+        }
+
+        int[] bands = new int[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            bands[i] = starts.get(i);
+        }
+        bands[starts.size()] = to;
+        return bands;
+    }
+}
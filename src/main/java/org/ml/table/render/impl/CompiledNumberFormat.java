@@ -0,0 +1,348 @@
+package org.ml.table.render.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * A number format which parses a {@link String#format(String, Object...)}
+ * pattern once and then formats values directly into an {@link Appendable}.
+ * Patterns with a single <code>%[flags][width][.precision]f</code> conversion
+ * and the flags <code>-</code>, <code>0</code>, <code>,</code>,
+ * <code>+</code> and blank are handled directly, using the decimal separator,
+ * grouping separator and zero digit of the locale. The result is the same as
+ * the one from {@link String#format(Locale, String, Object...)}: values close
+ * to a rounding tie, values too large for the fast path, and all other
+ * patterns are passed on to {@link String#format(Locale, String, Object...)}.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author mlaux
+ */
+public class CompiledNumberFormat {
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+    private static final int MAX_PRECISION = POWERS_OF_TEN.length - 1;
+    private static final int DEFAULT_PRECISION = 6;
+    private static final double FAST_PATH_LIMIT = 1 << 30;
+    private static final double TIE_TOLERANCE = 1.0e-6;
+    private final String pattern;
+    private final Locale locale;
+    private final boolean compiled;
+    private String prefix = "";
+    private String suffix = "";
+    private int width = -1;
+    private int precision = DEFAULT_PRECISION;
+    private boolean leftJustify = false;
+    private boolean zeroPad = false;
+    private boolean group = false;
+    private boolean plus = false;
+    private boolean leadingSpace = false;
+    private char zeroDigit = '0';
+    private char decimalSeparator = '.';
+    private char groupingSeparator = ',';
+    private int groupingSize = 3;
+
+    /**
+     * The default locale for formatting is used, as in
+     * {@link String#format(String, Object...)}
+     *
+     * @param pattern
+     */
+    public CompiledNumberFormat(String pattern) {
+        this(pattern, Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    /**
+     * @param pattern
+     * @param locale
+     */
+    public CompiledNumberFormat(String pattern, Locale locale) {
+        if (pattern == null) {
+            throw new NullPointerException("pattern may not be null");
+        }
+        if (locale == null) {
+            throw new NullPointerException("locale may not be null");
+        }
+        this.pattern = pattern;
+        this.locale = locale;
+        compiled = parse();
+        if (compiled) {
+            initSymbols();
+        }
+    }
+
+    /**
+     * @return
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return <code>true</code> if the pattern is handled directly and not by
+     * {@link String#format(Locale, String, Object...)}
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * @param value
+     * @return
+     */
+    public String format(double value) {
+        StringBuilder sb = new StringBuilder(prefix.length() + suffix.length() + 16);
+        try {
+            format(value, sb);
+        } catch (IOException ex) {
+            //.... Can not happen with a StringBuilder
+            throw new UncheckedIOException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    public void format(double value, Appendable out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }
+        if (!compiled || !append(value, out)) {
+            out.append(String.format(locale, pattern, value));
+        }
+    }
+
+    /**
+     * Format the value directly if this can be done with the same result as
+     * {@link String#format(Locale, String, Object...)}. Nothing is appended if
+     * this is not the case.
+     *
+     * @param value
+     * @param out
+     * @return <code>true</code> if the value has been appended
+     * @throws IOException
+     */
+    private boolean append(double value, Appendable out) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return false;
+        }
+
+        //.... String.format() rounds the shortest decimal representation half up. As long as the
+        //     scaled value is small and not close to a tie, rounding the binary value gives the same
+        boolean negative = Double.compare(value, 0.0) < 0;
+        double scaledValue = Math.abs(value) * POWERS_OF_TEN[precision];
+        if (!(scaledValue < FAST_PATH_LIMIT)) {
+            return false;
+        }
+        double floor = Math.floor(scaledValue);
+        double fraction = scaledValue - floor;
+        if (Math.abs(fraction - 0.5) <= TIE_TOLERANCE) {
+            return false;
+        }
+        long scaled = (long) floor + (fraction > 0.5 ? 1 : 0);
+        long integerPart = scaled / POWERS_OF_TEN[precision];
+        long fractionPart = scaled % POWERS_OF_TEN[precision];
+
+        //.... The length of the conversion is needed for the padding
+        int integerDigits = 1;
+        while (integerDigits <= MAX_PRECISION && integerPart >= POWERS_OF_TEN[integerDigits]) {
+            integerDigits++;
+        }
+        boolean grouping = group && groupingSize > 0;
+        int length = integerDigits;
+        if (grouping) {
+            length += (integerDigits - 1) / groupingSize;
+        }
+        if (precision > 0) {
+            length += precision + 1;
+        }
+        if (negative || plus || leadingSpace) {
+            length++;
+        }
+        int padding = width > length ? width - length : 0;
+
+        out.append(prefix);
+        if (!leftJustify && !zeroPad) {
+            appendRepeated(' ', padding, out);
+        }
+        if (negative) {
+            out.append('-');
+        } else if (plus) {
+            out.append('+');
+        } else if (leadingSpace) {
+            out.append(' ');
+        }
+        if (zeroPad) {
+            appendRepeated(zeroDigit, padding, out);
+        }
+        for (int i = integerDigits - 1; i >= 0; i--) {
+            out.append((char) (zeroDigit + (integerPart / POWERS_OF_TEN[i]) % 10));
+            if (grouping && i > 0 && i % groupingSize == 0) {
+                out.append(groupingSeparator);
+            }
+        }
+        if (precision > 0) {
+            out.append(decimalSeparator);
+            for (int i = precision - 1; i >= 0; i--) {
+                out.append((char) (zeroDigit + (fractionPart / POWERS_OF_TEN[i]) % 10));
+            }
+        }
+        if (leftJustify) {
+            appendRepeated(' ', padding, out);
+        }
+        out.append(suffix);
+
+        return true;
+    }
+
+    /**
+     *
+     * @param c
+     * @param count
+     * @param out
+     * @throws IOException
+     */
+    private static void appendRepeated(char c, int count, Appendable out) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+    }
+
+    /**
+     * Parse the pattern. Literal text before and after the conversion is kept
+     * as prefix and suffix.
+     *
+     * @return <code>false</code> if the pattern can not be handled directly
+     */
+    private boolean parse() {
+        StringBuilder text = new StringBuilder();
+        boolean found = false;
+        int n = pattern.length();
+        int i = 0;
+        while (i < n) {
+            char c = pattern.charAt(i++);
+            if (c != '%') {
+                text.append(c);
+                continue;
+            }
+            if (i >= n) {
+                return false;
+            }
+            if (pattern.charAt(i) == '%') {
+                text.append('%');
+                i++;
+                continue;
+            }
+            if (pattern.charAt(i) == 'n') {
+                text.append(System.lineSeparator());
+                i++;
+                continue;
+            }
+            if (found) {
+                return false;
+            }
+
+            //.... Flags; duplicates are rejected by String.format()
+            for (; i < n; i++) {
+                boolean duplicate;
+                switch (pattern.charAt(i)) {
+                    case '-':
+                        duplicate = leftJustify;
+                        leftJustify = true;
+                        break;
+                    case '0':
+                        duplicate = zeroPad;
+                        zeroPad = true;
+                        break;
+                    case ',':
+                        duplicate = group;
+                        group = true;
+                        break;
+                    case '+':
+                        duplicate = plus;
+                        plus = true;
+                        break;
+                    case ' ':
+                        duplicate = leadingSpace;
+                        leadingSpace = true;
+                        break;
+                    default:
+                        duplicate = false;
+                }
+                if (duplicate) {
+                    return false;
+                }
+                if ("-0,+ ".indexOf(pattern.charAt(i)) < 0) {
+                    break;
+                }
+            }
+
+            //.... Width and precision
+            int start = i;
+            while (i < n && Character.isDigit(pattern.charAt(i))) {
+                i++;
+            }
+            if (i - start > 9) {
+                return false;
+            }
+            if (i > start) {
+                width = Integer.parseInt(pattern.substring(start, i));
+            }
+            if (i < n && pattern.charAt(i) == '.') {
+                start = ++i;
+                while (i < n && Character.isDigit(pattern.charAt(i))) {
+                    i++;
+                }
+                if (i == start || i - start > 9) {
+                    return false;
+                }
+                precision = Integer.parseInt(pattern.substring(start, i));
+            }
+
+            if (i >= n || pattern.charAt(i) != 'f') {
+                return false;
+            }
+            i++;
+            found = true;
+            prefix = text.toString();
+            text.setLength(0);
+        }
+        suffix = text.toString();
+
+        //.... Combinations which String.format() rejects are left to it
+        if (!found || precision > MAX_PRECISION) {
+            return false;
+        }
+        if ((leftJustify || zeroPad) && width < 0) {
+            return false;
+        }
+        return !(leftJustify && zeroPad) && !(plus && leadingSpace);
+    }
+
+    /**
+     * The symbols used by String.format() for the locale
+     */
+    private void initSymbols() {
+        if (locale.equals(Locale.US)) {
+            return;
+        }
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        zeroDigit = symbols.getZeroDigit();
+        decimalSeparator = symbols.getDecimalSeparator();
+        groupingSeparator = symbols.getGroupingSeparator();
+        NumberFormat numberFormat = NumberFormat.getNumberInstance(locale);
+        if (numberFormat instanceof DecimalFormat) {
+            groupingSize = ((DecimalFormat) numberFormat).getGroupingSize();
+            if (!numberFormat.isGroupingUsed()) {
+                groupingSize = 0;
+            }
+        }
+    }
+}
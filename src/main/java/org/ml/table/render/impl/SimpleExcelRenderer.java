@@ -6,6 +6,7 @@ import org.ml.table.content.EmailContent;
 import org.ml.table.content.UrlAnchor;
 import org.ml.table.content.UrlContent;
 import org.ml.table.render.IExcelRenderer;
+import org.ml.table.render.RenderCache;
 
 /**
  * A renderer with some (hopefully) reasonable default behavior to render a Cell
@@ -17,6 +18,8 @@ import org.ml.table.render.IExcelRenderer;
  */
 public class SimpleExcelRenderer implements IExcelRenderer {
 
+    private RenderCache<Object, String> cache = null;
+
     /**
      *
      */
@@ -24,6 +27,32 @@ public class SimpleExcelRenderer implements IExcelRenderer {
 
     }
 
+    /**
+     * Enable a cache for the texts derived from contents like links and other
+     * objects, which are then computed only once as long as they are in the
+     * cache. Contents are compared by value if their class overrides equals,
+     * and by identity otherwise; they should not be modified after they have
+     * been rendered.
+     *
+     * @param maxSize The maximum number of cached contents, or 0 to disable
+     * the cache
+     * @return
+     */
+    public SimpleExcelRenderer setCacheSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize may not be negative");
+        }
+        cache = maxSize > 0 ? new RenderCache<>(maxSize) : null;
+        return this;
+    }
+
+    /**
+     * @return The cache or <code>null</code> if caching is disabled
+     */
+    public RenderCache<Object, String> getRenderCache() {
+        return cache;
+    }
+
     /**
      * @param excelCell
      * @param cell
@@ -59,17 +88,8 @@ public class SimpleExcelRenderer implements IExcelRenderer {
                     excelCell.setCellValue((LocalDate) content);
                 } else if (content instanceof String) {
                     excelCell.setCellValue((String) content);
-                } else if (content instanceof EmailContent) {
-                    String address = ((EmailContent) content).getAddress();
-                    excelCell.setCellValue("mailto:" + address);
-                } else if (content instanceof UrlContent) {
-                    UrlContent urlContent = (UrlContent) content;
-                    excelCell.setCellValue(urlContent.getText());
-                } else if (content instanceof UrlAnchor) {
-                    UrlAnchor urlAnchor = (UrlAnchor) content;
-                    excelCell.setCellValue(urlAnchor.getText());
                 } else {
-                    excelCell.setCellValue(content.toString());
+                    excelCell.setCellValue(getText(content));
                 }
 
             }
@@ -78,4 +98,30 @@ public class SimpleExcelRenderer implements IExcelRenderer {
             throw new UnsupportedOperationException(ex.getMessage() + " / Content value : " + cell.getContent());
         }
     }
+
+    /**
+     * The text shown for contents which are not numbers, booleans, dates or
+     * strings
+     *
+     * @param content
+     * @return
+     */
+    private String getText(Object content) {
+        String text = cache != null ? cache.get(content) : null;
+        if (text == null) {
+            if (content instanceof EmailContent) {
+                text = "mailto:" + ((EmailContent) content).getAddress();
+            } else if (content instanceof UrlContent) {
+                text = ((UrlContent) content).getText();
+            } else if (content instanceof UrlAnchor) {
+                text = ((UrlAnchor) content).getText();
+            } else {
+                text = content.toString();
+            }
+            if (cache != null) {
+                cache.put(content, text);
+            }
+        }
+        return text;
+    }
 }
@@ -1,11 +1,14 @@
 package org.ml.table.render.impl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import org.ml.table.Cell;
 import org.ml.table.content.EmailContent;
 import org.ml.table.content.UrlAnchor;
 import org.ml.table.content.UrlContent;
 import static org.ml.table.output.Hint.HINT_PERCENTAGE;
 import org.ml.table.render.AbstractVelocityRenderer;
+import org.ml.table.render.RenderCache;
 import org.ml.tools.FileType;
 
 /**
@@ -21,8 +24,9 @@ public class SimpleVelocityRenderer extends AbstractVelocityRenderer {
     public final static String DEFAULT_DOUBLE_FORMAT = "%.2f";
     public final static String DEFAULT_PERCENTAGE_FORMAT = "%.2f";
 
-    private String doubleFormat = DEFAULT_DOUBLE_FORMAT;
-    private String percentageFormat = DEFAULT_PERCENTAGE_FORMAT;
+    private CompiledNumberFormat doubleFormat = new CompiledNumberFormat(DEFAULT_DOUBLE_FORMAT);
+    private CompiledNumberFormat percentageFormat = new CompiledNumberFormat(DEFAULT_PERCENTAGE_FORMAT);
+    private RenderCache<Object, String> cache = null;
 
     /**
      *
@@ -44,8 +48,8 @@ public class SimpleVelocityRenderer extends AbstractVelocityRenderer {
         if (percentageFormat == null) {
             throw new NullPointerException("percentageFormat may not be null");
         }
-        this.doubleFormat = doubleFormat;
-        this.percentageFormat = percentageFormat;
+        this.doubleFormat = new CompiledNumberFormat(doubleFormat);
+        this.percentageFormat = new CompiledNumberFormat(percentageFormat);
     }
 
     /**
@@ -58,60 +62,245 @@ public class SimpleVelocityRenderer extends AbstractVelocityRenderer {
             throw new IllegalArgumentException("cell may not be null");
         }
 
+        //.... Plain strings without line breaks can be returned as they are
         Object content = cell.getContent();
+        if (content instanceof String && ((String) content).indexOf('\n') < 0 && !cell.containsHint(HINT_PERCENTAGE)) {
+            return (String) content;
+        }
+
+        try {
+            if (content != null && cache != null && isCacheable(content, cell.containsHint(HINT_PERCENTAGE))) {
+                return getCached(content, cell.containsHint(HINT_PERCENTAGE));
+            }
+            StringBuilder sb = new StringBuilder(32);
+            renderCell(cell, sb);
+            return sb.toString();
+        } catch (IOException ex) {
+            //.... Can not happen with a StringBuilder
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param cell
+     * @param out
+     * @throws IOException
+     */
+    @Override
+    public void renderCell(Cell cell, Appendable out) throws IOException {
+        if (cell == null) {
+            throw new IllegalArgumentException("cell may not be null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }
 
-        if (content != null) {
+        Object content = cell.getContent();
 
-            if (cell.containsHint(HINT_PERCENTAGE)) {
+        if (content == null) {
+            return;
+        }
 
-                double val = 0.0;
-                if (content instanceof Double) {
-                    val = 100.0 * (Double) content;
-                } else if (content instanceof Float) {
-                    val = 100.0 * (Float) content;
-                } else if (content instanceof Integer) {
-                    val = 100.0 * (Integer) content;
-                } else {
-                    throw new UnsupportedOperationException("content contains Hint '" + HINT_PERCENTAGE + "' and is instance of "
-                            + content.getClass() + " - don't know how to handle this");
-                }
-                return String.format(percentageFormat, val) + "%";
+        boolean percentage = cell.containsHint(HINT_PERCENTAGE);
+        if (cache != null && isCacheable(content, percentage)) {
+            out.append(getCached(content, percentage));
+        } else {
+            render(content, percentage, out);
+        }
+    }
+
+    /**
+     * Enable a cache for rendered contents. Contents which are expensive to
+     * render, like numbers, links and multi-line strings, are then rendered
+     * only once as long as they are in the cache. Contents are compared by
+     * value if their class overrides equals, and by identity otherwise; they
+     * should not be modified after they have been rendered.
+     *
+     * @param maxSize The maximum number of cached contents, or 0 to disable
+     * the cache
+     * @return
+     */
+    public SimpleVelocityRenderer setCacheSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize may not be negative");
+        }
+        cache = maxSize > 0 ? new RenderCache<>(maxSize) : null;
+        return this;
+    }
+
+    /**
+     * @return The cache or <code>null</code> if caching is disabled
+     */
+    public RenderCache<Object, String> getRenderCache() {
+        return cache;
+    }
+
+    /**
+     *
+     * @param content
+     * @param percentage
+     * @return
+     */
+    private static boolean isCacheable(Object content, boolean percentage) {
+        if (percentage) {
+            return true;
+        }
+        if (content instanceof Integer || content instanceof Boolean) {
+            return false;
+        }
+        return !(content instanceof String) || ((String) content).indexOf('\n') >= 0;
+    }
+
+    /**
+     *
+     * @param content
+     * @param percentage
+     * @return
+     * @throws IOException
+     */
+    private String getCached(Object content, boolean percentage) throws IOException {
+        Object key = percentage ? new PercentageKey(content) : content;
+        String rendered = cache.get(key);
+        if (rendered == null) {
+            StringBuilder sb = new StringBuilder(32);
+            render(content, percentage, sb);
+            rendered = sb.toString();
+            cache.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     *
+     * @param content
+     * @param percentage
+     * @param out
+     * @throws IOException
+     */
+    private void render(Object content, boolean percentage, Appendable out) throws IOException {
+        if (percentage) {
 
+            double val = 0.0;
+            if (content instanceof Double) {
+                val = 100.0 * (Double) content;
+            } else if (content instanceof Float) {
+                val = 100.0 * (Float) content;
+            } else if (content instanceof Integer) {
+                val = 100.0 * (Integer) content;
             } else {
+                throw new UnsupportedOperationException("content contains Hint '" + HINT_PERCENTAGE + "' and is instance of "
+                        + content.getClass() + " - don't know how to handle this");
+            }
+            percentageFormat.format(val, out);
+            out.append('%');
+
+        } else {
 
-                if (content instanceof Integer) {
-                    return String.valueOf((Integer) content);
-                } else if (content instanceof String) {
-                    return ((String) content).replaceAll("\n", "<br/>");
-                } else if (content instanceof Float) {
-                    return String.format(doubleFormat, (Float) content);
-                } else if (content instanceof Double) {
-                    return String.format(doubleFormat, (Double) content);
-                } else if (content instanceof Boolean) {
-                    return String.valueOf((Boolean) content);
-                } else if (content instanceof EmailContent) {
-                    String address = ((EmailContent) content).getAddress();
-                    return "<a href=\"mailto:" + address + "\">" + address + "</a>";
-                } else if (content instanceof UrlContent) {
-                    UrlContent urlContent = (UrlContent) content;
-                    StringBuilder sb = new StringBuilder(200);
-                    sb.append("<a href=\"").append(urlContent.getAddress());
-                    if (urlContent.appendFileExtension()) {
-                        sb.append(FileType.HTML.getExtension());
-                    }
-                    sb.append("\" title=\"").append(urlContent.getTooltip()).append("\">").append(urlContent.getText()).append("</a>");
-                    return sb.toString();
-                } else if (content instanceof UrlAnchor) {
-                    UrlAnchor urlAnchor = (UrlAnchor) content;
-                    return "<a name=\"" + urlAnchor.getAddress() + "\">" + urlAnchor.getText() + "</a>";
-                } else {
-                    return content.toString();
+            if (content instanceof Integer) {
+                appendInt((Integer) content, out);
+            } else if (content instanceof String) {
+                appendText((String) content, out);
+            } else if (content instanceof Float) {
+                doubleFormat.format((Float) content, out);
+            } else if (content instanceof Double) {
+                doubleFormat.format((Double) content, out);
+            } else if (content instanceof Boolean) {
+                out.append((Boolean) content ? "true" : "false");
+            } else if (content instanceof EmailContent) {
+                String address = ((EmailContent) content).getAddress();
+                out.append("<a href=\"mailto:").append(address).append("\">").append(address).append("</a>");
+            } else if (content instanceof UrlContent) {
+                UrlContent urlContent = (UrlContent) content;
+                out.append("<a href=\"").append(urlContent.getAddress());
+                if (urlContent.appendFileExtension()) {
+                    out.append(FileType.HTML.getExtension());
                 }
+                out.append("\" title=\"").append(urlContent.getTooltip()).append("\">").append(urlContent.getText()).append("</a>");
+            } else if (content instanceof UrlAnchor) {
+                UrlAnchor urlAnchor = (UrlAnchor) content;
+                out.append("<a name=\"").append(urlAnchor.getAddress()).append("\">").append(urlAnchor.getText()).append("</a>");
+            } else {
+                out.append(content.toString());
             }
-        } else {
+        }
+    }
+
+    /**
+     * Percentages are rendered differently from the same value without the
+     * hint, so they need a key of their own
+     */
+    private static class PercentageKey {
 
-            return "";
+        private final Object content;
 
+        /**
+         * @param content
+         */
+        PercentageKey(Object content) {
+            this.content = content;
+        }
+
+        /**
+         * @return
+         */
+        @Override
+        public int hashCode() {
+            return 31 * content.hashCode() + 1;
+        }
+
+        /**
+         * @param object
+         * @return
+         */
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof PercentageKey && content.equals(((PercentageKey) object).content);
+        }
+    }
+
+    /**
+     * Append the text replacing line breaks by &lt;br/&gt;
+     *
+     * @param text
+     * @param out
+     * @throws IOException
+     */
+    private static void appendText(String text, Appendable out) throws IOException {
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                out.append(text, start, i).append("<br/>");
+                start = i + 1;
+            }
+        }
+        out.append(text, start, length);
+    }
+
+    /**
+     * Append the decimal digits of the value without creating a string
+     *
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    private static void appendInt(int value, Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(value);
+            return;
+        }
+        long val = value;
+        if (val < 0) {
+            out.append('-');
+            val = -val;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= val) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + val / divisor));
+            val %= divisor;
         }
     }
 
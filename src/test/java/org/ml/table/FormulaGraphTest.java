@@ -0,0 +1,164 @@
+package org.ml.table;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the recomputation of formula cells when the cells they depend on
+ * change
+ *
+ * @author mlaux
+ */
+public class FormulaGraphTest {
+
+    /**
+     * @param rowNumber
+     * @return A table with the numbers 1 .. rowNumber - 1 in column 0 and their
+     * sum in the last row
+     */
+    private static Table createTable(int rowNumber) {
+        Table table = new Table(rowNumber, 2);
+        for (int row = 0; row < rowNumber - 1; row++) {
+            table.setCell(new Cell().setContent((double) row + 1), row, 0);
+        }
+        table.setCell(new FormulaCell(Formula.sum(0, 0, rowNumber - 2, 0)), rowNumber - 1, 0);
+        return table;
+    }
+
+    @Test
+    public void computedWhenAdded() {
+        assertEquals(6.0, createTable(4).getCell(3, 0).getContent());
+    }
+
+    @Test
+    public void recomputedWhenInputsChange() {
+        Table table = createTable(4);
+        table.getCell(1, 0).setContent(10.0);
+        assertEquals(14.0, table.getCell(3, 0).getContent());
+        table.clearCell(0, 0);
+        assertEquals(13.0, table.getCell(3, 0).getContent());
+        table.setCell(new Cell().setContent(5.0), 0, 0);
+        assertEquals(18.0, table.getCell(3, 0).getContent());
+    }
+
+    @Test
+    public void dependentFormulasInOrder() {
+        Table table = createTable(4);
+        table.setCell(new FormulaCell(Formula.cell(3, 0).times(Formula.constant(2))), 3, 1);
+        table.setCell(new FormulaCell(Formula.sum(1, 1, 3, 1).plus(Formula.cell(3, 0))), 0, 1);
+        assertEquals(18.0, table.getCell(0, 1).getContent());
+        table.getCell(2, 0).setContent(4.0);
+        assertEquals(14.0, table.getCell(3, 1).getContent());
+        assertEquals(21.0, table.getCell(0, 1).getContent());
+    }
+
+    @Test
+    public void cyclesRejected() {
+        Table table = createTable(4);
+        assertThrows(IllegalArgumentException.class, () -> table.setCell(new FormulaCell(Formula.cell(0, 1)), 0, 1));
+        table.setCell(new FormulaCell(Formula.cell(3, 0)), 1, 1);
+        table.clearCell(1, 0);
+        assertThrows(IllegalArgumentException.class, () -> table.setCell(new FormulaCell(Formula.cell(1, 1)), 1, 0));
+    }
+
+    @Test
+    public void tagCyclesRejected() {
+        Table table = createTable(4);
+        table.setCell(new FormulaCell(Formula.sumTagged("x", 0)), 0, 1);
+        table.addTag(Table.Direction.ROW, 0, "x");
+        table.addTag(Table.Direction.ROW, 1, "x");
+        assertEquals(3.0, table.getCell(0, 1).getContent());
+
+        //.... The total in row 3 would read the tagged sum, which reads the total
+        table.clearCell(2, 0);
+        table.setCell(new FormulaCell(Formula.cell(0, 1)), 2, 0);
+        assertThrows(IllegalArgumentException.class, () -> table.addTag(Table.Direction.ROW, 3, "x"));
+        assertFalse(table.getTags(Table.Direction.ROW, 3) != null && table.getTags(Table.Direction.ROW, 3).containsKey("x"));
+        table.getCell(0, 0).setContent(2.0);
+        assertEquals(4.0, table.getCell(0, 1).getContent());
+        assertEquals(8.0, table.getCell(3, 0).getContent());
+    }
+
+    @Test
+    public void rangesBeyondTheTableFollowGrowth() {
+        Table table = new Table(2, 2);
+        table.setCell(new Cell().setContent(1.0), 0, 0);
+        table.setCell(new FormulaCell(Formula.sum(0, 0, 9, 0)), 0, 1);
+        table.addRows(RowLocation.BOTTOM, 3);
+        table.setCell(new Cell().setContent(2.0), 4, 0);
+        assertEquals(3.0, table.getCell(0, 1).getContent());
+        table.addColumns(ColumnLocation.LEFT, 1);
+        table.setCell(new FormulaCell(Formula.cell(4, 0)), 0, -1);
+        table.getCell(4, 0).setContent(5.0);
+        assertEquals(5.0, table.getCell(0, -1).getContent());
+        assertEquals(6.0, table.getCell(0, 1).getContent());
+    }
+
+    @Test
+    public void recomputedOnceAtTheEndOfABatch() {
+        Table table = new Table(101, 1);
+        table.setCell(new FormulaCell(Formula.sum(0, 0, 99, 0)), 100, 0);
+        List<Object> inBatch = new ArrayList<>();
+        table.batch(() -> {
+            for (int row = 0; row < 100; row++) {
+                table.setCell(new Cell().setContent(1.0), row, 0);
+            }
+            inBatch.add(table.getCell(100, 0).getContent());
+        });
+        assertEquals(0.0, inBatch.get(0));
+        assertEquals(100.0, table.getCell(100, 0).getContent());
+    }
+
+    @Test
+    public void formulasOfAddedTablesReferToTheirTable() {
+        Table source = new Table(3, 2);
+        source.setCell(new Cell().setContent(10.0), 0, 0);
+        source.setCell(new Cell().setContent(20.0), 1, 0);
+        source.setCell(new FormulaCell(Formula.sum(0, 0, 1, 0)), 2, 0);
+        Table host = new Table(10, 10);
+        host.setCell(new Cell().setContent(1000.0), 0, 0);
+        host.setCell(new Cell().setContent(2000.0), 1, 0);
+
+        host.addTable(source, 5, 3);
+        assertEquals(30.0, source.getCell(2, 0).getContent());
+        assertEquals(3000.0, host.getCell(7, 3).getContent());
+        assertNotSame(source.getCell(2, 0), host.getCell(7, 3));
+        assertSame(source.getCell(1, 0), host.getCell(6, 3));
+
+        source.getCell(1, 0).setContent(30.0);
+        assertEquals(40.0, source.getCell(2, 0).getContent());
+        assertEquals(3000.0, host.getCell(7, 3).getContent());
+    }
+
+    @Test
+    public void formulaCellsHeldByOneTable() {
+        FormulaCell cell = new FormulaCell(Formula.constant(1));
+        Table table = new Table(2, 2);
+        Table other = new Table(2, 2);
+        table.setCell(cell, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> other.setCell(cell, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> table.setCell(cell, 1, 1));
+        table.clearCell(0, 0);
+        other.setCell(cell, 1, 1);
+        assertEquals(1.0, other.getCell(1, 1).getContent());
+    }
+
+    @Test
+    public void compactionMovesFormulas() {
+        Table table = new Table(4, 3);
+        table.setCell(new Cell().setContent(1.0), 1, 1);
+        table.setCell(new Cell().setContent(2.0), 2, 1);
+        table.setCell(new FormulaCell(Formula.sum(1, 1, 2, 1)), 3, 1);
+        table.compact();
+        Cell total = table.getCell(table.getRowEnd(), table.getColEnd());
+        assertEquals(3.0, total.getContent());
+        table.getCell(table.getRow0(), table.getCol0()).setContent(4.0);
+        assertEquals(6.0, total.getContent());
+    }
+}
@@ -0,0 +1,91 @@
+package org.ml.table;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the evaluation of formulas and their Excel representation
+ *
+ * @author mlaux
+ */
+public class FormulaTest {
+
+    /**
+     * @return A table with the numbers 1, 2 and 4 in column 0, an empty slot
+     * and a text in rows 3 and 4
+     */
+    private static Table createTable() {
+        Table table = new Table(5, 2);
+        table.setCell(new Cell().setContent(1.0), 0, 0);
+        table.setCell(new Cell().setContent(2), 1, 0);
+        table.setCell(new Cell().setContent(4.0), 2, 0);
+        table.setCell(new Cell().setContent("text"), 4, 0);
+        return table;
+    }
+
+    @Test
+    public void aggregatesIgnoreEmptySlotsAndTexts() {
+        Table table = createTable();
+        assertEquals(7.0, Formula.sum(0, 0, 4, 0).evaluate(table));
+        assertEquals(3.0, Formula.aggregate(Formula.Aggregate.COUNT, 0, 0, 4, 0).evaluate(table));
+        assertEquals(7.0 / 3, Formula.aggregate(Formula.Aggregate.AVERAGE, 0, 0, 4, 0).evaluate(table), 1e-12);
+        assertEquals(1.0, Formula.aggregate(Formula.Aggregate.MIN, 0, 0, 4, 0).evaluate(table));
+        assertEquals(4.0, Formula.aggregate(Formula.Aggregate.MAX, 0, 0, 4, 0).evaluate(table));
+    }
+
+    @Test
+    public void aggregatesOfEmptyRanges() {
+        Table table = createTable();
+        assertEquals(0.0, Formula.sum(0, 1, 4, 1).evaluate(table));
+        assertEquals(0.0, Formula.aggregate(Formula.Aggregate.MIN, 0, 1, 4, 1).evaluate(table));
+        assertTrue(Double.isNaN(Formula.aggregate(Formula.Aggregate.AVERAGE, 0, 1, 4, 1).evaluate(table)));
+    }
+
+    @Test
+    public void rangesOutsideOfTheTableAreEmpty() {
+        Table table = createTable();
+        assertEquals(7.0, Formula.sum(-10, 0, 100, 0).evaluate(table));
+        assertEquals(0.0, Formula.cell(100, 0).evaluate(table));
+    }
+
+    @Test
+    public void arithmetic() {
+        Table table = createTable();
+        Formula formula = Formula.cell(2, 0).minus(Formula.cell(0, 0)).times(Formula.constant(2)).plus(Formula.cell(1, 0));
+        assertEquals(8.0, formula.evaluate(table));
+        assertEquals(2.0, Formula.cell(2, 0).dividedBy(Formula.cell(1, 0)).evaluate(table));
+        assertTrue(Double.isNaN(Formula.cell(0, 0).dividedBy(Formula.cell(3, 0)).evaluate(table)));
+    }
+
+    @Test
+    public void taggedRows() {
+        Table table = createTable();
+        table.addTag(Table.Direction.ROW, 0, "x");
+        table.addTag(Table.Direction.ROW, 2, "x");
+        assertEquals(5.0, Formula.sumTagged("x", 0).evaluate(table));
+        assertEquals(0.0, Formula.sumTagged("y", 0).evaluate(table));
+    }
+
+    @Test
+    public void excelSyntax() {
+        Table table = createTable();
+        table.addTag(Table.Direction.ROW, 0, "x");
+        table.addTag(Table.Direction.ROW, 2, "x");
+        assertEquals("SUM(A2:B4)", Formula.sum(0, 0, 2, 1).toExcel(table, 1));
+        assertEquals("(A1*2.0)", Formula.cell(0, 0).times(Formula.constant(2)).toExcel(table, 0));
+        assertEquals("MAX(A1,A3)", Formula.aggregateTagged(Formula.Aggregate.MAX, "x", 0).toExcel(table, 0));
+        assertNull(Formula.sumTagged("y", 0).toExcel(table, 0));
+        assertNull(Formula.cell(0, 0).plus(Formula.constant(Double.NaN)).toExcel(table, 0));
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> Formula.sum(2, 0, 1, 0));
+        assertThrows(NullPointerException.class, () -> Formula.aggregate(null, 0, 0, 1, 1));
+        assertThrows(NullPointerException.class, () -> Formula.sumTagged(null, 0));
+        assertThrows(NullPointerException.class, () -> Formula.cell(0, 0).plus(null));
+    }
+}